@@ -0,0 +1,48 @@
+package com.rcg.walmart.benchmark;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingRow;
+import com.rcg.walmart.venue.SquareVenue;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/* square venues partially filled with scattered, effectively permanent holds */
+public class EventFixtures {
+    public static final String EVENT_ID = "benchmark_event";
+    public static final String EMAIL = "benchmark@domain.com";
+    //the fill holds must outlive any amount of clock stepping a benchmark does
+    private static final int FILL_HOLD_DURATION_MINUTES = Integer.MAX_VALUE;
+    private static final int MAX_FILL_BLOCK = 8;
+
+    public static SquareVenue squareVenue(int venueSide) {
+        return new SquareVenue(venueSide, venueSide, 0, venueSide / 2);
+    }
+
+    /**
+     * Builds an event on a venueSide x venueSide venue and holds random blocks of 1 to 8 seats until roughly
+     * fillLevel of the venue is taken, leaving the fragmented availability an on-sale produces.
+     */
+    public static EventService filledEvent(int venueSide, double fillLevel, Clock clock, long seed) {
+        SquareVenue venue = squareVenue(venueSide);
+        EventService event = new EventService(EVENT_ID, venue.getSeatingFragments(), new ArrayList<SeatHold>());
+        event.setClock(clock);
+        Random random = new Random(seed);
+        int seatsToFill = (int) (fillLevel * venue.numSeatsAvailable());
+        int filled = 0;
+        int attempts = 0;
+        while (filled < seatsToFill && attempts++ < seatsToFill * 20) {
+            SeatingRow row = venue.getSeatingRows().get(random.nextInt(venueSide));
+            int start = random.nextInt(venueSide);
+            int end = Math.min(venueSide - 1, start + random.nextInt(MAX_FILL_BLOCK));
+            if (event.createSeatHold(Collections.singletonList(row.asFragment().subFragment(start, end)),
+                    EMAIL, FILL_HOLD_DURATION_MINUTES).isPresent()) {
+                filled += end - start + 1;
+            }
+        }
+        return event;
+    }
+}
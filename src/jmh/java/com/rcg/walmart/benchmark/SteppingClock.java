@@ -0,0 +1,39 @@
+package com.rcg.walmart.benchmark;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/* a clock that only moves when told to, so benchmarks can expire holds without waiting for them */
+public class SteppingClock extends Clock {
+    private Instant now;
+
+    public SteppingClock() {
+        this(Instant.now());
+    }
+
+    public SteppingClock(Instant now) {
+        this.now = now;
+    }
+
+    public void advance(Duration duration) {
+        this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return this.now;
+    }
+}
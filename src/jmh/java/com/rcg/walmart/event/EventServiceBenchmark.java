@@ -0,0 +1,39 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.benchmark.EventFixtures;
+import com.rcg.walmart.benchmark.SteppingClock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventServiceBenchmark {
+    @Param({"100", "316", "1000"})
+    int venueSide;
+
+    @Param({"0.0", "0.5", "0.9"})
+    double fillLevel;
+
+    private EventService unit;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        unit = EventFixtures.filledEvent(venueSide, fillLevel, new SteppingClock(), 42L);
+    }
+
+    /* the sweep every new hold and the background sweeper run, with plenty of live holds and none of them expired */
+    @Benchmark
+    public void removeStaleSeatHolds() {
+        unit.removeStaleSeatHolds();
+    }
+
+    @Benchmark
+    public int totalSeatsAvailable() {
+        return unit.totalSeatsAvailable();
+    }
+}
@@ -0,0 +1,54 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.benchmark.EventFixtures;
+import com.rcg.walmart.benchmark.SteppingClock;
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* bringing a filled event up from its snapshot against rebuilding it from the venue and its holds */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSnapshotBenchmark {
+    @Param({"100", "316", "1000"})
+    int venueSide;
+
+    @Param({"0.5"})
+    double fillLevel;
+
+    private Path file;
+    private List<SeatHold> holds;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        EventService event = EventFixtures.filledEvent(venueSide, fillLevel, new SteppingClock(), 42L);
+        holds = event.getAllSeatHolds();
+        file = Files.createTempFile("event", ".snapshot");
+        EventSnapshot.write(event, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public EventService readSnapshot() throws IOException {
+        return EventSnapshot.read(file);
+    }
+
+    @Benchmark
+    public EventService rebuildFromVenue() {
+        return EventService.inVenue(EventFixtures.EVENT_ID, EventFixtures.squareVenue(venueSide), holds);
+    }
+}
@@ -0,0 +1,52 @@
+package com.rcg.walmart.seating;
+
+import com.rcg.walmart.benchmark.EventFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeatingFragmentBenchmark {
+    @Param({"100", "316", "1000"})
+    int venueSide;
+
+    @Param({"1", "8", "50"})
+    int groupSize;
+
+    private SeatingFragment wholeRow;
+    private SeatingFragment middleOfRow;
+    private SeatingFragment leftOfMiddle;
+    private SeatingFragment rightOfMiddle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        //the middle row of the venue, away from the ideal seat so windows are not trivially cheapest at one end
+        wholeRow = EventFixtures.squareVenue(venueSide).getSeatingRows().get(venueSide / 2).asFragment();
+        int middle = venueSide / 2;
+        middleOfRow = wholeRow.subFragment(middle, Math.min(venueSide - 1, middle + groupSize - 1));
+        leftOfMiddle = wholeRow.subFragment(0, middle - 1);
+        rightOfMiddle = wholeRow.subFragment(middle, venueSide - 1);
+    }
+
+    @Benchmark
+    public Optional<SeatingFragment> bestBlockFromFragment() {
+        return wholeRow.bestBlockFromFragment(groupSize);
+    }
+
+    @Benchmark
+    public Optional<List<SeatingFragment>> minusAnother() {
+        return wholeRow.minusAnother(middleOfRow);
+    }
+
+    @Benchmark
+    public SeatingFragment mergeWithBlock() {
+        return leftOfMiddle.mergeWithBlock(rightOfMiddle);
+    }
+}
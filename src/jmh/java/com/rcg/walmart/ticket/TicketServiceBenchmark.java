@@ -0,0 +1,83 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.benchmark.EventFixtures;
+import com.rcg.walmart.benchmark.SteppingClock;
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.locking.SimpleLockService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketServiceBenchmark {
+    //longer than the hold duration TicketService uses, so every benchmark hold expires on the next sweep
+    private static final Duration PAST_HOLD_EXPIRY = Duration.ofMinutes(10);
+    private static final Duration SEARCH_BUDGET = Duration.ofMillis(2);
+
+    @Param({"100", "316", "1000"})
+    int venueSide;
+
+    @Param({"1", "8", "250"})
+    int groupSize;
+
+    @Param({"0.0", "0.5", "0.9"})
+    double fillLevel;
+
+    private SteppingClock clock;
+    private EventService event;
+    private TicketService unit;
+    private TicketService searching;
+    private TicketService parallel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clock = new SteppingClock();
+        event = EventFixtures.filledEvent(venueSide, fillLevel, clock, 42L);
+        //the benchmarks expire their holds themselves, a background sweep would change the event mid measurement
+        unit = new TicketService(event, new SimpleLockService());
+        unit.setExpirySweeping(false);
+        searching = new TicketService(event, new SimpleLockService());
+        searching.setExpirySweeping(false);
+        searching.setAllocationStrategy(new BranchAndBoundSeatAllocation(SEARCH_BUDGET));
+        parallel = new TicketService(event, new SimpleLockService());
+        parallel.setExpirySweeping(false);
+        parallel.setAllocationStrategy(new GreedySeatAllocation(ForkJoinPool.commonPool(), 0));
+    }
+
+    @Benchmark
+    public Optional<List<SeatingFragment>> findBestSeatingFragments() {
+        return unit.findBestSeatingFragments(groupSize);
+    }
+
+    /* the greedy allocation pricing the final block's windows on the common pool */
+    @Benchmark
+    public Optional<List<SeatingFragment>> findBestSeatingFragmentsInParallel() {
+        return parallel.findBestSeatingFragments(groupSize);
+    }
+
+    /* the anytime search, bounded by its budget on top of the greedy allocation it starts from */
+    @Benchmark
+    public Optional<List<SeatingFragment>> findBestSeatingFragmentsWithinBudget() {
+        return searching.findBestSeatingFragments(groupSize);
+    }
+
+    /* a full hold lifecycle: search, hold, then expire the hold so the venue returns to the same fill level */
+    @Benchmark
+    public SeatHold findAndHoldSeatsThenExpire() {
+        SeatHold seatHold = unit.findAndHoldSeats(groupSize, EventFixtures.EMAIL);
+        clock.advance(PAST_HOLD_EXPIRY);
+        event.removeStaleSeatHolds();
+        return seatHold;
+    }
+}
@@ -0,0 +1,54 @@
+package com.rcg.walmart.venue;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/* reading the layout of a stadium with two levels of sections of ragged rows */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutVenueBenchmark {
+    //2 levels x 20 sections x 40 rows of 50 to 75 seats, a little over 100k seats
+    private static final int LEVELS = 2;
+    private static final int SECTIONS = 20;
+    private static final int ROWS_PER_SECTION = 40;
+
+    private Path layout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        layout = Files.createTempFile("stadium", ".layout");
+        try (BufferedWriter writer = Files.newBufferedWriter(layout, StandardCharsets.UTF_8)) {
+            writer.write("ideal 0 40\n");
+            for (int level = 0; level < LEVELS; level++) {
+                writer.write("level L" + level + " cost " + level * 25 + "\n");
+                for (int section = 0; section < SECTIONS; section++) {
+                    writer.write("section S" + section + "\n");
+                    for (int row = 0; row < ROWS_PER_SECTION; row++) {
+                        int seats = 50 + (row * 5) % 26;
+                        writer.write("row R" + row + " " + seats + " first " + (75 - seats) / 2 + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(layout);
+    }
+
+    @Benchmark
+    public LayoutVenue load() throws IOException {
+        return LayoutVenue.load(layout);
+    }
+}
@@ -1,16 +1,35 @@
 package com.rcg.walmart.controller;
 
+import com.rcg.walmart.event.AvailabilitySnapshot;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seathold.SeatHoldQuery;
+import com.rcg.walmart.seating.BestBlockCache;
+import com.rcg.walmart.seating.SeatingFragment;
 import com.rcg.walmart.ticket.TicketService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class TicketController {
+    static final int MAX_HOLDS_PER_PAGE = 1000;
+
     @Autowired
     TicketService ticketService;
+    @Autowired
+    ObjectMapper objectMapper;
 
     @RequestMapping("/")
     public @ResponseBody
@@ -25,31 +44,114 @@ public class TicketController {
 
     @RequestMapping("/event/{eventId}/seatsAvailable")
     public int getSeatsAvailable(@PathVariable String eventId) {
-        return ticketService.numSeatsAvailable();
+        return ticketService.numSeatsAvailable(eventId);
+    }
+
+    @RequestMapping("/event/{eventId}/seatMap")
+    public AvailabilitySnapshot getSeatMap(@PathVariable String eventId) {
+        return ticketService.getAvailability(eventId);
+    }
+
+    @RequestMapping("/event/{eventId}/preview/{numSeats}")
+    public List<SeatingFragment> previewSeats(@PathVariable String eventId, @PathVariable int numSeats) {
+        return ticketService.previewSeats(eventId, numSeats).orElse(null);
+    }
+
+    @RequestMapping("/event/{eventId}/bestBlockCache")
+    public BestBlockCache.Stats getBestBlockCacheStats(@PathVariable String eventId) {
+        return ticketService.getBestBlockCacheStats(eventId);
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "/event/{eventId}/hold/{numSeats}")
-    public SeatHold createSeatHold(@PathVariable String eventId, @PathVariable int numSeats, @RequestBody String emailAddress) {
-        SeatHold seatHold = ticketService.findAndHoldSeats(numSeats, emailAddress);
-        if (seatHold != null) {
-            return seatHold;
-        } else {
-            return null;
-        }
+    public CompletableFuture<SeatHold> createSeatHold(@PathVariable String eventId, @PathVariable int numSeats, @RequestBody String emailAddress) {
+        //the servlet thread is handed back while the hold waits for busy rows
+        return ticketService.findAndHoldSeatsAsync(eventId, numSeats, emailAddress);
     }
 
     @RequestMapping("/event/{eventId}/hold/listAll")
     public List<SeatHold> getAllHolds(@PathVariable String eventId) {
-        return ticketService.getReservations();
+        return ticketService.getReservations(eventId);
+    }
+
+    /* a page of holds written out as they are visited, with the cursor to ask for the next page with */
+    @RequestMapping("/event/{eventId}/holds")
+    public ResponseEntity<StreamingResponseBody> listHolds(
+            @PathVariable String eventId,
+            @RequestParam(defaultValue = "0") int after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) SeatHoldQuery.Status status,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to) {
+        if (limit < 1) {
+            //an empty page would hand back the cursor it was asked for and a client following it would never finish
+            return ResponseEntity.badRequest().build();
+        }
+        if (!ticketService.hasEvent(eventId)) {
+            //the body is only written once the response is committed, too late to say there is no such event
+            return ResponseEntity.notFound().build();
+        }
+        SeatHoldQuery query = new SeatHoldQuery(status, email, from, to);
+        int pageSize = Math.min(limit, MAX_HOLDS_PER_PAGE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("holds");
+                OptionalInt next;
+                try {
+                    next = ticketService.forEachSeatHold(eventId, query, after, pageSize, seatHold -> {
+                        try {
+                            writeSeatHold(json, seatHold);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                json.writeEndArray();
+                if (next.isPresent()) {
+                    json.writeNumberField("next", next.getAsInt());
+                } else {
+                    json.writeNullField("next");
+                }
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    //the hold with its seats as row ranges, a listing has no use for every seat of every hold
+    private static void writeSeatHold(JsonGenerator json, SeatHold seatHold) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("seatHoldId", seatHold.getSeatHoldId());
+        json.writeStringField("email", seatHold.getEmail());
+        json.writeStringField("status", (seatHold.isHold() ? SeatHoldQuery.Status.HELD : SeatHoldQuery.Status.RESERVED).name());
+        json.writeStringField("holdTime", seatHold.getHoldTime().toString());
+        json.writeStringField("holdExpirationTime", seatHold.getHoldExpirationTime().toString());
+        if (seatHold.isReservation()) {
+            json.writeStringField("confirmationCode", seatHold.getConfirmationCode());
+            json.writeStringField("confirmationTime", seatHold.getConfirmationTime().toString());
+        }
+        json.writeArrayFieldStart("seats");
+        for (SeatingFragment fragment : seatHold.getSeatingFragments()) {
+            json.writeStartObject();
+            json.writeNumberField("blockIndex", fragment.getBlockIndex());
+            json.writeNumberField("startIndex", fragment.getStartIndex());
+            json.writeNumberField("endIndex", fragment.getEndIndex());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
     }
 
     @RequestMapping("/event/{eventId}/hold/{seatHoldId}")
     public SeatHold getSeatHoldDetails(@PathVariable String eventId, @PathVariable int seatHoldId, @RequestBody String emailAddress) {
-        return ticketService.getReservation(seatHoldId, emailAddress);
+        return ticketService.getReservation(eventId, seatHoldId, emailAddress);
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "/event/{eventId}/hold/confirm/{seatHoldId}")
-    public String confirmSeatHold(@PathVariable int seatHoldId, @RequestBody String emailAddress) {
-        return ticketService.reserveSeats(seatHoldId, emailAddress);
+    public String confirmSeatHold(@PathVariable String eventId, @PathVariable int seatHoldId, @RequestBody String emailAddress) {
+        return ticketService.reserveSeats(eventId, seatHoldId, emailAddress);
     }
 }
@@ -0,0 +1,254 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seating.AvailableFragments;
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingFragment;
+
+import java.util.*;
+
+/*
+ * The free seats and seat counts of an event as of one change, never modified once published.  The EventService
+ * publishes a new version for every hold, confirmation and expiry, taking over the rows the change did not touch as
+ * they are, so readers such as seat maps and previews see a whole hold or none of it without taking any lock.
+ *
+ * The free fragments are kept per row ordered by position, the rows by block index.  Seat searches run over those
+ * directly, a group one fragment can seat costs a single pass over the rows and only searches needing the fragments
+ * largest first sort them, once per version.
+ */
+public class AvailabilitySnapshot implements AvailableFragments {
+    private static final SeatingFragment[] NO_FRAGMENTS = new SeatingFragment[0];
+
+    private final long version;
+    private final SeatingFragment[][] rows;
+    private final int seatsAvailable;
+    private final int seatsHeld;
+    private final int seatsReserved;
+    //worked out on first use, racing readers build the same thing
+    private volatile List<SeatingFragment> inRowOrder;
+    private volatile List<SeatingFragment> largestFirst;
+
+    private AvailabilitySnapshot(long version, SeatingFragment[][] rows, int seatsAvailable, int seatsHeld,
+                                 int seatsReserved) {
+        this.version = version;
+        this.rows = rows;
+        this.seatsAvailable = seatsAvailable;
+        this.seatsHeld = seatsHeld;
+        this.seatsReserved = seatsReserved;
+    }
+
+    static AvailabilitySnapshot of(Collection<SeatingFragment> freeFragments, int seatsHeld, int seatsReserved) {
+        TreeMap<Integer, List<SeatingFragment>> byRow = new TreeMap<Integer, List<SeatingFragment>>();
+        int seatsAvailable = 0;
+        for (SeatingFragment fragment : freeFragments) {
+            byRow.computeIfAbsent(fragment.getBlockIndex(), blockIndex -> new ArrayList<SeatingFragment>()).add(fragment);
+            seatsAvailable += fragment.getSize();
+        }
+        int numRows = byRow.isEmpty() ? 0 : byRow.lastKey() + 1;
+        SeatingFragment[][] rows = new SeatingFragment[numRows][];
+        for (Map.Entry<Integer, List<SeatingFragment>> row : byRow.entrySet()) {
+            row.getValue().sort(Comparator.comparingInt(SeatingFragment::getStartIndex));
+            rows[row.getKey()] = row.getValue().toArray(NO_FRAGMENTS);
+        }
+        return new AvailabilitySnapshot(0, rows, seatsAvailable, seatsHeld, seatsReserved);
+    }
+
+    /* the next version with the blocks of a new hold taken out of the free seats */
+    AvailabilitySnapshot held(List<SeatingFragment> blocks) {
+        SeatingFragment[][] changed = this.rows.clone();
+        int numSeats = 0;
+        for (SeatingFragment block : blocks) {
+            changed[block.getBlockIndex()] = carve(row(changed, block.getBlockIndex()), block);
+            numSeats += block.getSize();
+        }
+        return new AvailabilitySnapshot(this.version + 1, changed, this.seatsAvailable - numSeats,
+                this.seatsHeld + numSeats, this.seatsReserved);
+    }
+
+    AvailabilitySnapshot confirmed(int numSeats) {
+        return new AvailabilitySnapshot(this.version + 1, this.rows, this.seatsAvailable, this.seatsHeld - numSeats,
+                this.seatsReserved + numSeats);
+    }
+
+    /* the next version with the blocks of an expired hold free again */
+    AvailabilitySnapshot released(List<SeatingFragment> blocks) {
+        int numRows = this.rows.length;
+        for (SeatingFragment block : blocks) {
+            numRows = Math.max(numRows, block.getBlockIndex() + 1);
+        }
+        SeatingFragment[][] changed = Arrays.copyOf(this.rows, numRows);
+        int numSeats = 0;
+        for (SeatingFragment block : blocks) {
+            changed[block.getBlockIndex()] = release(row(changed, block.getBlockIndex()), block);
+            numSeats += block.getSize();
+        }
+        return new AvailabilitySnapshot(this.version + 1, changed, this.seatsAvailable + numSeats,
+                this.seatsHeld - numSeats, this.seatsReserved);
+    }
+
+    private static SeatingFragment[] row(SeatingFragment[][] rows, int blockIndex) {
+        return blockIndex < rows.length && rows[blockIndex] != null ? rows[blockIndex] : NO_FRAGMENTS;
+    }
+
+    //the position of the last fragment starting at or before the seat, -1 if there is none
+    private static int startingAtOrBefore(SeatingFragment[] row, int seatNumber) {
+        int low = 0;
+        int high = row.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (row[middle].getStartIndex() <= seatNumber) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private static SeatingFragment[] carve(SeatingFragment[] row, SeatingFragment taken) {
+        int source = startingAtOrBefore(row, taken.getStartIndex());
+        if (source < 0 || !row[source].containsAnother(taken)) {
+            //holds publish before they can expire and expiries before the seats can be claimed again
+            throw new IllegalStateException("seats are not free in the version being replaced: " + taken);
+        }
+        List<SeatingFragment> rest = row[source].minusAnother(taken).get();
+        SeatingFragment[] carved = new SeatingFragment[row.length - 1 + rest.size()];
+        System.arraycopy(row, 0, carved, 0, source);
+        for (int i = 0; i < rest.size(); i++) {
+            carved[source + i] = rest.get(i);
+        }
+        System.arraycopy(row, source + 1, carved, source + rest.size(), row.length - source - 1);
+        return carved;
+    }
+
+    private static SeatingFragment[] release(SeatingFragment[] row, SeatingFragment freed) {
+        int before = startingAtOrBefore(row, freed.getStartIndex());
+        int after = before + 1;
+        SeatingFragment merged = freed;
+        int from = before + 1;
+        if (before >= 0 && row[before].getEndIndex() + 1 == freed.getStartIndex()) {
+            merged = merged.mergeWithBlock(row[before]);
+            from = before;
+        }
+        int to = after;
+        if (after < row.length && row[after].getStartIndex() == freed.getEndIndex() + 1) {
+            merged = merged.mergeWithBlock(row[after]);
+            to = after + 1;
+        }
+        SeatingFragment[] released = new SeatingFragment[row.length - (to - from) + 1];
+        System.arraycopy(row, 0, released, 0, from);
+        released[from] = merged;
+        System.arraycopy(row, to, released, from + 1, row.length - to);
+        return released;
+    }
+
+    /* goes up by one with every hold, confirmation and expiry */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public int getSeatsHeld() {
+        return seatsHeld;
+    }
+
+    public int getSeatsReserved() {
+        return seatsReserved;
+    }
+
+    /* the free seats of every row with any, as inclusive start and end seat numbers by block index */
+    public SortedMap<Integer, List<int[]>> getFreeSeatRanges() {
+        SortedMap<Integer, List<int[]>> seatMap = new TreeMap<Integer, List<int[]>>();
+        for (int blockIndex = 0; blockIndex < this.rows.length; blockIndex++) {
+            SeatingFragment[] row = this.rows[blockIndex];
+            if (row != null && row.length > 0) {
+                List<int[]> ranges = new ArrayList<int[]>(row.length);
+                for (SeatingFragment fragment : row) {
+                    ranges.add(new int[]{fragment.getStartIndex(), fragment.getEndIndex()});
+                }
+                seatMap.put(blockIndex, ranges);
+            }
+        }
+        return seatMap;
+    }
+
+    /* all free fragments by row, then by position in the row */
+    public List<SeatingFragment> fragmentsInRowOrder() {
+        List<SeatingFragment> fragments = this.inRowOrder;
+        if (fragments == null) {
+            List<SeatingFragment> all = new ArrayList<SeatingFragment>();
+            for (SeatingFragment[] row : this.rows) {
+                if (row != null) {
+                    all.addAll(Arrays.asList(row));
+                }
+            }
+            fragments = Collections.unmodifiableList(all);
+            this.inRowOrder = fragments;
+        }
+        return fragments;
+    }
+
+    @Override
+    public List<SeatingFragment> largestFirst() {
+        List<SeatingFragment> fragments = this.largestFirst;
+        if (fragments == null) {
+            SeatingFragment[] sorted = fragmentsInRowOrder().toArray(NO_FRAGMENTS);
+            Arrays.sort(sorted, FreeFragmentIndex.LARGEST_THEN_CHEAPEST);
+            fragments = Collections.unmodifiableList(Arrays.asList(sorted));
+            this.largestFirst = fragments;
+        }
+        return fragments;
+    }
+
+    @Override
+    public List<SeatingFragment> atLeast(int numSeats) {
+        List<SeatingFragment> fragments = largestFirst();
+        //the number of fragments holding at least numSeats seats, they come first
+        int low = 0;
+        int high = fragments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (fragments.get(middle).getSize() >= numSeats) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return fragments.subList(0, low);
+    }
+
+    @Override
+    public Optional<SeatingFragment> cheapestBlock(int numSeats) {
+        SeatingFragment bestFragment = null;
+        SeatingFragment best = null;
+        for (SeatingFragment[] row : this.rows) {
+            if (row == null) {
+                continue;
+            }
+            for (SeatingFragment fragment : row) {
+                if (fragment.getSize() < numSeats) {
+                    continue;
+                }
+                SeatingFragment window = fragment.bestBlockFromFragment(numSeats).get();
+                int result = best == null ? -1 : Double.compare(window.getTotalSeatCost(), best.getTotalSeatCost());
+                if (result < 0 || result == 0 && FreeFragmentIndex.LARGEST_THEN_CHEAPEST.compare(fragment, bestFragment) < 0) {
+                    bestFragment = fragment;
+                    best = window;
+                }
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    @Override
+    public String toString() {
+        return "AvailabilitySnapshot{" +
+                "version=" + version +
+                ", seatsAvailable=" + seatsAvailable +
+                ", seatsHeld=" + seatsHeld +
+                ", seatsReserved=" + seatsReserved +
+                '}';
+    }
+}
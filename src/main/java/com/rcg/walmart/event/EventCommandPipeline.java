@@ -0,0 +1,167 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/*
+ * Applies every change to an event on one dedicated writer thread.  Callers put commands on a bounded ring and get a
+ * future back, the writer drains whatever has queued up and applies it as a batch in arrival order, sweeping expired
+ * holds once per batch rather than once per command.  With a single writer the order seats are claimed in is the order
+ * commands were accepted in, the same on every run, and holds never race each other for seats.
+ *
+ * The event itself stays safe to read from any thread, the pipeline only decides who changes it and in what order.
+ */
+public class EventCommandPipeline implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int DEFAULT_MAX_BATCH = 256;
+    //an idle writer still sweeps expired holds this often
+    private static final long IDLE_SWEEP_MILLIS = 1000;
+    private static final Logger LOG = LoggerFactory.getLogger(EventCommandPipeline.class);
+
+    private final EventService eventService;
+    private final BlockingQueue<Command<?>> ring;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean running;
+
+    private static class Command<T> {
+        final Function<EventService, T> action;
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+
+        Command(Function<EventService, T> action) {
+            this.action = action;
+        }
+
+        void apply(EventService eventService) {
+            try {
+                result.complete(action.apply(eventService));
+            } catch (VirtualMachineError e) {
+                //no telling what state the heap is in, the writer stops and fails the commands still queued
+                result.completeExceptionally(e);
+                throw e;
+            } catch (Throwable e) {
+                //whatever the command threw is its caller's to see, the writer goes on with the next one
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    public EventCommandPipeline(EventService eventService) {
+        this(eventService, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    public EventCommandPipeline(EventService eventService, int capacity, int maxBatch) {
+        this.eventService = eventService;
+        this.ring = new ArrayBlockingQueue<Command<?>>(capacity);
+        this.maxBatch = maxBatch;
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "event-writer-" + eventService.getEventId());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a command for the writer thread.
+     *
+     * @return completes with whatever the command returned once it has been applied, fails with a
+     * RejectedExecutionException straight away when the ring is full or the pipeline closed
+     */
+    public <T> CompletableFuture<T> submit(Function<EventService, T> action) {
+        Command<T> command = new Command<T>(action);
+        if (!this.running || !this.ring.offer(command)) {
+            command.result.completeExceptionally(new RejectedExecutionException(
+                    this.running ? "command ring full for event " + eventService.getEventId()
+                            : "command pipeline closed for event " + eventService.getEventId()));
+        } else if (!this.running) {
+            //closed while queueing, the writer may already have drained for the last time
+            drainRejected();
+        }
+        return command.result;
+    }
+
+    public CompletableFuture<Optional<SeatHold>> createSeatHold(List<SeatingFragment> requestedSeats, String email, int holdDurationMinutes) {
+        return submit(event -> event.createSeatHold(requestedSeats, email, holdDurationMinutes));
+    }
+
+    public CompletableFuture<Optional<String>> confirmSeatHold(int seatHoldId, String emailAddressOnFile) {
+        return submit(event -> event.confirmSeatHold(seatHoldId, emailAddressOnFile));
+    }
+
+    public CompletableFuture<Void> removeStaleSeatHolds() {
+        return submit(event -> {
+            event.removeStaleSeatHolds();
+            return null;
+        });
+    }
+
+    public int pendingCommands() {
+        return this.ring.size();
+    }
+
+    private void writeLoop() {
+        List<Command<?>> batch = new ArrayList<Command<?>>(this.maxBatch);
+        try {
+            while (this.running) {
+                try {
+                    Command<?> first = this.ring.poll(IDLE_SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        this.ring.drainTo(batch, this.maxBatch - 1);
+                    }
+                } catch (InterruptedException e) {
+                    //closing, whatever is still queued is turned away below
+                    break;
+                }
+                try {
+                    this.eventService.removeStaleSeatHolds();
+                } catch (VirtualMachineError e) {
+                    throw e;
+                } catch (Throwable e) {
+                    //the commands of this batch still get applied, the next batch sweeps again
+                    LOG.warn("Sweeping the expired holds of event {} failed", this.eventService.getEventId(), e);
+                }
+                for (Command<?> command : batch) {
+                    command.apply(this.eventService);
+                }
+                batch.clear();
+            }
+        } finally {
+            //however the writer stops, nobody is left waiting on a command it will never apply
+            this.running = false;
+            for (Command<?> command : batch) {
+                command.result.completeExceptionally(new RejectedExecutionException(
+                        "command pipeline closed for event " + eventService.getEventId()));
+            }
+            drainRejected();
+        }
+    }
+
+    private void drainRejected() {
+        List<Command<?>> rejected = new ArrayList<Command<?>>();
+        this.ring.drainTo(rejected);
+        for (Command<?> command : rejected) {
+            command.result.completeExceptionally(new RejectedExecutionException(
+                    "command pipeline closed for event " + eventService.getEventId()));
+        }
+    }
+
+    /* stops the writer, commands not yet applied fail with a RejectedExecutionException */
+    @Override
+    public void close() {
+        this.running = false;
+        this.writer.interrupt();
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
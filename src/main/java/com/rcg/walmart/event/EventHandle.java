@@ -0,0 +1,70 @@
+package com.rcg.walmart.event;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * A resident event pinned in memory for as long as the handle is open.  The EventRegistry only evicts events nobody
+ * has pinned, so a caller holding a handle can change the event without its changes being lost to an eviction.
+ */
+public class EventHandle implements AutoCloseable {
+    private final ResidentEvent resident;
+    private boolean closed;
+
+    /* an event in memory, with the number of open handles on it or -1 once it is being evicted */
+    static class ResidentEvent {
+        final EventService eventService;
+        final int numSeats;
+        final AtomicInteger pins = new AtomicInteger();
+        volatile long lastUsed;
+        //per event helpers such as a command pipeline, closed when the event is evicted
+        final ConcurrentHashMap<String, AutoCloseable> attachments = new ConcurrentHashMap<String, AutoCloseable>();
+        //records the changes to the event, closed once the event is evicted
+        final EventJournal journal;
+
+        ResidentEvent(EventService eventService, int numSeats) {
+            this(eventService, numSeats, EventJournal.NONE);
+        }
+
+        ResidentEvent(EventService eventService, int numSeats, EventJournal journal) {
+            this.eventService = eventService;
+            this.numSeats = numSeats;
+            this.journal = journal;
+        }
+
+        boolean tryPin() {
+            while (true) {
+                int current = this.pins.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (this.pins.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    EventHandle(ResidentEvent resident) {
+        this.resident = resident;
+    }
+
+    public EventService getEventService() {
+        return this.resident.eventService;
+    }
+
+    /* the helper registered under the name for this event, created by the factory the first time it is asked for */
+    @SuppressWarnings("unchecked")
+    public <T extends AutoCloseable> T attachment(String name, Function<EventService, T> factory) {
+        return (T) this.resident.attachments.computeIfAbsent(name, key -> factory.apply(this.resident.eventService));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.resident.pins.decrementAndGet();
+        }
+    }
+}
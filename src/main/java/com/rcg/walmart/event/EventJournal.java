@@ -0,0 +1,32 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+
+/*
+ * Records the changes to the holds of an event as they happen, so the event can be rebuilt after a restart.  Called
+ * once the change is visible in the EventService, on the thread making it, and expected to return quickly.
+ */
+public interface EventJournal extends AutoCloseable {
+    EventJournal NONE = new EventJournal() {
+        public void held(SeatHold seatHold) {
+        }
+
+        public void confirmed(SeatHold seatHold) {
+        }
+
+        public void expired(SeatHold seatHold) {
+        }
+
+        public void close() {
+        }
+    };
+
+    void held(SeatHold seatHold);
+
+    void confirmed(SeatHold seatHold);
+
+    void expired(SeatHold seatHold);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,337 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.event.EventHandle.ResidentEvent;
+import com.rcg.walmart.persistence.MappedEventJournal;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.venue.LayoutVenue;
+import com.rcg.walmart.venue.Venue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Routes event ids to their EventService.  Each event has state of its own, built from its venue the first time the
+ * event is used, so requests for different events never share a lock or a data structure.
+ *
+ * Resident events are held to a budget of seats.  Going over it evicts the events used least recently that have no
+ * open handles and no unconfirmed holds, keeping only their confirmed reservations; the next use of an evicted event
+ * rebuilds it from its venue with those reservations taken.
+ *
+ * Given a journal directory every event records its holds, confirmations and expiries in a MappedEventJournal of its
+ * own, and is rebuilt from that journal instead, after an eviction as well as after a restart.
+ */
+@Service
+public class EventRegistry {
+    private static final long DEFAULT_SEAT_BUDGET = 2_000_000;
+    private static final String LAYOUT_EXTENSION = ".layout";
+    private static final Logger LOG = LoggerFactory.getLogger(EventRegistry.class);
+
+    /* how to build an event, plus the reservations of the event while it is evicted */
+    private static class EventDefinition {
+        final String eventId;
+        final Venue venue;
+        List<SeatHold> parkedReservations = Collections.emptyList();
+        //never evicted, for events handed to the registry already built
+        boolean pinnedResident;
+
+        EventDefinition(String eventId, Venue venue) {
+            this.eventId = eventId;
+            this.venue = venue;
+        }
+    }
+
+    private final ConcurrentHashMap<String, EventDefinition> definitions;
+    private final ConcurrentHashMap<String, ResidentEvent> residents;
+    private final long seatBudget;
+    private final AtomicLong residentSeats;
+    private final AtomicLong useCounter;
+    //null when the events are kept in memory only
+    private final Path journalDirectory;
+
+    public EventRegistry() {
+        this(DEFAULT_SEAT_BUDGET);
+    }
+
+    public EventRegistry(long seatBudget) {
+        this(seatBudget, "");
+    }
+
+    public EventRegistry(long seatBudget, String journalDirectory) {
+        this(seatBudget, journalDirectory, "");
+    }
+
+    /**
+     * @param journalDirectory the directory the events journal their holds to, one subdirectory per event, or empty
+     *                         to keep the events in memory only
+     * @param venueDirectory   a directory of venue layout files to register an event for each of, named after the file
+     *                         less its .layout extension, or empty for none
+     */
+    @Autowired
+    public EventRegistry(@Value("${ticketservice.event-seat-budget:" + DEFAULT_SEAT_BUDGET + "}") long seatBudget,
+                         @Value("${ticketservice.journal-dir:}") String journalDirectory,
+                         @Value("${ticketservice.venue-dir:}") String venueDirectory) {
+        this.definitions = new ConcurrentHashMap<String, EventDefinition>();
+        this.residents = new ConcurrentHashMap<String, ResidentEvent>();
+        this.seatBudget = seatBudget;
+        this.residentSeats = new AtomicLong();
+        this.useCounter = new AtomicLong();
+        this.journalDirectory = journalDirectory.isEmpty() ? null : Paths.get(journalDirectory);
+        register(EventService.DEFAULT_EVENT_ID, EventService.DEFAULT_VENUE);
+        if (!venueDirectory.isEmpty()) {
+            registerLayouts(Paths.get(venueDirectory));
+        }
+    }
+
+    private EventRegistry(EventService eventService) {
+        this.definitions = new ConcurrentHashMap<String, EventDefinition>();
+        this.residents = new ConcurrentHashMap<String, ResidentEvent>();
+        this.seatBudget = Long.MAX_VALUE;
+        this.residentSeats = new AtomicLong();
+        this.useCounter = new AtomicLong();
+        this.journalDirectory = null;
+        add(eventService);
+    }
+
+    /* a registry holding just the one event */
+    public static EventRegistry of(EventService eventService) {
+        return new EventRegistry(eventService);
+    }
+
+    /* makes an event known, it is built from the venue the first time it is used */
+    public void register(String eventId, Venue venue) {
+        this.definitions.putIfAbsent(eventId, new EventDefinition(eventId, venue));
+    }
+
+    /**
+     * Registers an event for every venue layout file in the directory, named after the file less its .layout extension.
+     * The layouts are read straight away so a broken one stops the service from starting.
+     *
+     * @return the ids of the events registered
+     */
+    public List<String> registerLayouts(Path venueDirectory) {
+        List<String> eventIds = new ArrayList<String>();
+        try (DirectoryStream<Path> layouts = Files.newDirectoryStream(venueDirectory, "*" + LAYOUT_EXTENSION)) {
+            for (Path layout : layouts) {
+                String fileName = layout.getFileName().toString();
+                String eventId = fileName.substring(0, fileName.length() - LAYOUT_EXTENSION.length());
+                register(eventId, LayoutVenue.load(layout));
+                eventIds.add(eventId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(eventIds);
+        return eventIds;
+    }
+
+    /* adds an already built event, it stays resident for as long as the registry lives */
+    public void add(EventService eventService) {
+        EventDefinition definition = new EventDefinition(eventService.getEventId(), null);
+        definition.pinnedResident = true;
+        if (this.definitions.putIfAbsent(eventService.getEventId(), definition) != null) {
+            throw new IllegalArgumentException("event already registered: " + eventService.getEventId());
+        }
+        AvailabilitySnapshot availability = eventService.getAvailability();
+        ResidentEvent resident = new ResidentEvent(eventService,
+                availability.getSeatsAvailable() + availability.getSeatsHeld() + availability.getSeatsReserved());
+        this.residents.put(eventService.getEventId(), resident);
+        this.residentSeats.addAndGet(resident.numSeats);
+    }
+
+    public List<String> getEventIds() {
+        List<String> eventIds = new ArrayList<String>(this.definitions.keySet());
+        Collections.sort(eventIds);
+        return eventIds;
+    }
+
+    public boolean isRegistered(String eventId) {
+        return this.definitions.containsKey(eventId);
+    }
+
+    public boolean isResident(String eventId) {
+        return this.residents.containsKey(eventId);
+    }
+
+    public long getResidentSeats() {
+        return this.residentSeats.get();
+    }
+
+    /**
+     * Pins the event in memory, building it first when it is not resident.  Close the handle once done with the event.
+     *
+     * @return the handle, empty for an unknown event id
+     */
+    public Optional<EventHandle> open(String eventId) {
+        while (true) {
+            ResidentEvent resident = this.residents.get(eventId);
+            if (resident == null) {
+                EventDefinition definition = this.definitions.get(eventId);
+                if (definition == null) {
+                    return Optional.empty();
+                }
+                resident = materialize(definition);
+                if (resident != null) {
+                    return Optional.of(new EventHandle(resident));
+                }
+            } else if (resident.tryPin()) {
+                resident.lastUsed = this.useCounter.incrementAndGet();
+                return Optional.of(new EventHandle(resident));
+            }
+            //evicted between the lookup and the pin, build it again once the eviction is through
+            Thread.yield();
+        }
+    }
+
+    /* the resident event, built unless someone else got there first, pinned for the caller, null while it is evicted */
+    private ResidentEvent materialize(EventDefinition definition) {
+        ResidentEvent resident;
+        //only builds of the same event wait on each other
+        synchronized (definition) {
+            resident = this.residents.get(definition.eventId);
+            if (resident != null) {
+                if (!resident.tryPin()) {
+                    //the eviction parks the reservations under this monitor, wait for it to be done
+                    return null;
+                }
+                resident.lastUsed = this.useCounter.incrementAndGet();
+                return resident;
+            }
+            resident = this.journalDirectory == null
+                    ? new ResidentEvent(EventService.inVenue(definition.eventId, definition.venue,
+                    definition.parkedReservations), definition.venue.numSeatsAvailable())
+                    : fromJournal(definition);
+            //pinned before anyone can see it, the eviction this build may set off must not take the event straight back
+            resident.tryPin();
+            resident.lastUsed = this.useCounter.incrementAndGet();
+            definition.parkedReservations = Collections.emptyList();
+            this.residents.put(definition.eventId, resident);
+        }
+        if (this.residentSeats.addAndGet(resident.numSeats) > this.seatBudget) {
+            evictColdEvents();
+        }
+        return resident;
+    }
+
+    private ResidentEvent fromJournal(EventDefinition definition) {
+        Path directory = this.journalDirectory.resolve(definition.eventId);
+        try {
+            EventService eventService = MappedEventJournal.recover(directory, definition.eventId, definition.venue);
+            EventJournal journal = openJournal(directory, eventService);
+            eventService.setJournal(journal);
+            return new ResidentEvent(eventService, definition.venue.numSeatsAvailable(), journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* the journal of an event rebuilt from the directory */
+    EventJournal openJournal(Path directory, EventService eventService) throws IOException {
+        return MappedEventJournal.open(directory, eventService);
+    }
+
+    /**
+     * Evicts the least recently used events that can be until the resident events fit the seat budget again.
+     *
+     * @return the number of events evicted
+     */
+    public int evictColdEvents() {
+        int evicted = 0;
+        //one eviction pass at a time, requests for events keep going while it runs
+        synchronized (this) {
+            //sort on a copy of the use stamps, they keep moving while we sort
+            List<Map.Entry<Long, ResidentEvent>> leastRecentlyUsedFirst = new ArrayList<Map.Entry<Long, ResidentEvent>>();
+            for (ResidentEvent resident : this.residents.values()) {
+                leastRecentlyUsedFirst.add(new AbstractMap.SimpleImmutableEntry<Long, ResidentEvent>(resident.lastUsed, resident));
+            }
+            leastRecentlyUsedFirst.sort(Map.Entry.comparingByKey());
+            for (Map.Entry<Long, ResidentEvent> entry : leastRecentlyUsedFirst) {
+                ResidentEvent resident = entry.getValue();
+                if (this.residentSeats.get() <= this.seatBudget) {
+                    break;
+                }
+                try {
+                    if (evict(resident)) {
+                        evicted++;
+                    }
+                } catch (RuntimeException e) {
+                    //evicted all the same, the rest of the pass and whoever set it off go on
+                    evicted++;
+                    LOG.warn("Closing the journal of evicted event {} failed", resident.eventService.getEventId(), e);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private boolean evict(ResidentEvent resident) {
+        EventService eventService = resident.eventService;
+        EventDefinition definition = this.definitions.get(eventService.getEventId());
+        if (definition.pinnedResident || !resident.pins.compareAndSet(0, -1)) {
+            return false;
+        }
+        //nobody can open the event from here on, holds still running out keep it resident
+        eventService.removeStaleSeatHolds();
+        if (eventService.totalSeatsHeld() > 0) {
+            resident.pins.set(0);
+            return false;
+        }
+        closeAttachments(resident);
+        synchronized (definition) {
+            //with a journal the reservations are read back from it instead
+            if (this.journalDirectory == null) {
+                definition.parkedReservations = eventService.getAllSeatHolds();
+            }
+            try {
+                resident.journal.close();
+            } finally {
+                //pinned for good by now, left resident nobody could ever open the event again
+                this.residents.remove(eventService.getEventId(), resident);
+                this.residentSeats.addAndGet(-resident.numSeats);
+            }
+        }
+        return true;
+    }
+
+    /* closes the per event helpers of every resident event, they are created again when next asked for */
+    public void closeAttachments() {
+        for (ResidentEvent resident : this.residents.values()) {
+            closeAttachments(resident);
+        }
+    }
+
+    /* closes the per event helpers and forces the journals to disk, the registry is done with after this */
+    @PreDestroy
+    public void close() {
+        closeAttachments();
+        for (ResidentEvent resident : this.residents.values()) {
+            resident.journal.close();
+        }
+    }
+
+    private static void closeAttachments(ResidentEvent resident) {
+        for (String name : resident.attachments.keySet()) {
+            AutoCloseable attachment = resident.attachments.remove(name);
+            if (attachment != null) {
+                try {
+                    attachment.close();
+                } catch (Exception e) {
+                    //shutting down or evicting, the event is going away either way
+                }
+            }
+        }
+    }
+}
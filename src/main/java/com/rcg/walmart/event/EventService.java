@@ -1,27 +1,40 @@
 package com.rcg.walmart.event;
 
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatOccupancy;
 import com.rcg.walmart.seating.Seat;
 import com.rcg.walmart.seating.SeatingFragment;
 import com.rcg.walmart.seathold.SeatHold;
-import com.rcg.walmart.venue.SquareVenue;
+import com.rcg.walmart.seathold.SeatHoldExpiryQueue;
+import com.rcg.walmart.seathold.SeatHoldQuery;
+import com.rcg.walmart.seathold.SeatHoldRegistry;
 import com.rcg.walmart.venue.Venue;
-import org.springframework.stereotype.Service;
+import com.rcg.walmart.venue.VenueTemplates;
 
 import java.time.Clock;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-/* simplistic service, that only knows about a single event */
-@Service
+/* the seats and holds of a single event, the EventRegistry keeps one per event */
 public class EventService {
-    private static final String DEFAULT_EVENT_ID = "main_event";
-        private static final Venue DEFAULT_VENUE = new SquareVenue(100, 100, 0, 50);
+    static final String DEFAULT_EVENT_ID = "main_event";
+    static final Venue DEFAULT_VENUE = VenueTemplates.square(100, 100, 0, 50);
     private String eventId;
-    private List<SeatingFragment> availableSeats;
-    private List<SeatHold> reservations;
+    //free fragments ordered by size then cost for the seat search and by position within each row for coalescing
+    private FreeFragmentIndex availableSeats;
+    //which seats are taken, holds claim their seats here before carving them out of availableSeats
+    private SeatOccupancy occupancy;
+    private SeatHoldRegistry reservations;
+    //unconfirmed holds by deadline, so expiring them never walks the confirmed reservations
+    private SeatHoldExpiryQueue expiringHolds;
+    //what readers see, seat counts included, replaced with a new version after every change
+    private final AtomicReference<AvailabilitySnapshot> availability;
     private Clock clock;
+    private EventJournal journal = EventJournal.NONE;
 
     public EventService() {
         this(DEFAULT_EVENT_ID, DEFAULT_VENUE.getSeatingFragments(), new ArrayList<>());
@@ -29,11 +42,27 @@ public class EventService {
 
     public EventService(String eventId, List<SeatingFragment> availableSeatingFragments, List<SeatHold> reservations) {
         this.eventId = eventId;
-        this.availableSeats = availableSeatingFragments.stream().collect(Collectors.toCollection(ArrayList::new));
-        this.reservations = reservations.stream().collect(Collectors.toCollection(ArrayList::new));
+        this.availableSeats = new FreeFragmentIndex(availableSeatingFragments);
+        List<SeatingFragment> trackedSeats = new ArrayList<SeatingFragment>(availableSeatingFragments);
+        reservations.forEach(r -> trackedSeats.addAll(r.getSeatingFragments()));
+        this.occupancy = new SeatOccupancy(availableSeatingFragments, trackedSeats);
+        this.reservations = new SeatHoldRegistry();
+        this.expiringHolds = new SeatHoldExpiryQueue();
+        reservations.forEach(this::trackReservation);
+        this.availability = new AtomicReference<AvailabilitySnapshot>(AvailabilitySnapshot.of(availableSeatingFragments,
+                reservations.stream().filter(SeatHold::isHold).mapToInt(EventService::seatCount).sum(),
+                reservations.stream().filter(SeatHold::isReservation).mapToInt(EventService::seatCount).sum()));
         this.clock = Clock.system(ZoneOffset.UTC);
     }
 
+    /* an event in the venue with the seats of the given reservations already taken */
+    public static EventService inVenue(String eventId, Venue venue, List<SeatHold> reservations) {
+        FreeFragmentIndex freeSeats = new FreeFragmentIndex(venue.getSeatingFragments());
+        for (SeatHold reservation : reservations) {
+            reservation.getSeatingFragments().forEach(freeSeats::carve);
+        }
+        return new EventService(eventId, freeSeats.inRowOrder(), reservations);
+    }
 
     public String getEventId() {
         return eventId;
@@ -43,98 +72,142 @@ public class EventService {
     public Optional<String> confirmSeatHold(int seatHoldId, String emailAddressOnFile) {
         Optional<SeatHold> hold = getSeatHold(seatHoldId, emailAddressOnFile);
         if (hold.isPresent() && hold.isPresent()) {
-            return hold.get().confirmReservation(this.clock);
+            Optional<String> confirmationCode = hold.get().confirmReservation(this.clock);
+            confirmationCode.ifPresent(code -> {
+                this.availability.updateAndGet(snapshot -> snapshot.confirmed(seatCount(hold.get())));
+                this.journal.confirmed(hold.get());
+            });
+            return confirmationCode;
         } else {
             return Optional.empty();
         }
     }
 
     public Optional<SeatHold> getSeatHold(int seatHoldId, String emailAddressOnFile) {
-        Optional<SeatHold> hold = reservations.stream()
-                .filter(sh -> sh.getSeatHoldId() == seatHoldId && sh.getEmail().equals(emailAddressOnFile))
-                .findFirst();
-        return hold;
+        return reservations.find(seatHoldId, emailAddressOnFile);
     }
 
-    private void addReservation(SeatHold seatHold) {
-        synchronized (this.reservations) {
-            this.reservations.add(seatHold);
-            removeStaleSeatHolds();
+    private void trackReservation(SeatHold seatHold) {
+        this.reservations.register(seatHold);
+        if (seatHold.isHold()) {
+            this.expiringHolds.add(seatHold);
         }
     }
 
+    private void addReservation(SeatHold seatHold) {
+        trackReservation(seatHold);
+        this.journal.held(seatHold);
+        removeStaleSeatHolds();
+    }
+
+    /**
+     * Holds the requested seats if every one of them is still free.  The seats are claimed in the occupancy bitsets
+     * first, which is what decides between concurrent requests for the same seats, so no lock is held while doing so
+     * and requests for different seats never wait on each other.
+     *
+     * @return the hold, empty if any of the requested seats were taken in the meantime
+     */
     public Optional<SeatHold> createSeatHold(List<SeatingFragment> requestedSeats, String email, int holdDurationMinutes) {
-        boolean seatsAvailable = requestedSeats.stream().allMatch(requestedFragment ->
-                this.availableSeats.stream().anyMatch(availableFragment -> availableFragment.containsAnother(requestedFragment))
-        );
-        if (seatsAvailable) {
-            ArrayList<SeatingFragment> reservedBlocks = new ArrayList<SeatingFragment>();
-            for (SeatingFragment r : requestedSeats) {
-                //before we got here we confirmed up at the top that the fragments are all represented, proceed sunny day
-                Optional<SeatingFragment> sourceBlock = this.availableSeats.stream().filter(sf -> sf.containsAnother(r)).findFirst();
-
-                boolean removalResult = this.availableSeats.remove(sourceBlock.get());
-                reservedBlocks.add(r);
-                Optional<List<SeatingFragment>> remainingAvailableSpace = sourceBlock.get().minusAnother(r);
-
-                this.availableSeats.addAll(remainingAvailableSpace.get());
+        if (!this.occupancy.claimAll(requestedSeats)) {
+            return Optional.empty();
+        }
+        ArrayList<SeatingFragment> reservedBlocks = new ArrayList<SeatingFragment>(requestedSeats.size());
+        for (SeatingFragment r : requestedSeats) {
+            //the claim succeeded so nobody else can carve these seats, a miss means the request was never free
+            Optional<SeatingFragment> reservedBlock = this.availableSeats.carve(r);
+            if (!reservedBlock.isPresent()) {
+                reservedBlocks.forEach(this.availableSeats::release);
+                requestedSeats.forEach(this.occupancy::release);
+                return Optional.empty();
             }
-            SeatHold seatHold = new SeatHold(reservedBlocks, email, ZonedDateTime.now(this.clock), holdDurationMinutes);
-            addReservation(seatHold);
-            return Optional.of(seatHold);
+            reservedBlocks.add(reservedBlock.get());
         }
-        return Optional.empty();
-
+        //published before the hold can expire, so its release always finds the seats taken
+        this.availability.updateAndGet(snapshot -> snapshot.held(reservedBlocks));
+        SeatHold seatHold = new SeatHold(reservedBlocks, email, ZonedDateTime.now(this.clock), holdDurationMinutes);
+        addReservation(seatHold);
+        return Optional.of(seatHold);
     }
 
     private void returnSeatingFragmentToAvailablePool(SeatingFragment staleReservationFragment) {
-        synchronized (this.availableSeats) {
-            SeatingFragment addThisBackToAvailable = new SeatingFragment(staleReservationFragment.getSeats());
-            Optional<SeatingFragment> before = this.availableSeats.stream()
-                    .filter(sf -> sf.getBlockIndex() == staleReservationFragment.getBlockIndex()
-                            && sf.getEndIndex() + 1 == staleReservationFragment.getStartIndex()).findFirst();
-
-            Optional<SeatingFragment> after = this.availableSeats.stream()
-                    .filter(sf -> sf.getBlockIndex() == staleReservationFragment.getBlockIndex()
-                            && sf.getStartIndex() - 1 == staleReservationFragment.getEndIndex()).findFirst();
-            if (before.isPresent()) {
-                this.availableSeats.remove(before.get());
-                addThisBackToAvailable = addThisBackToAvailable.mergeWithBlock(before.get());
-            }
-            if (after.isPresent()) {
-                this.availableSeats.remove(after.get());
-                addThisBackToAvailable = addThisBackToAvailable.mergeWithBlock(after.get());
-            }
-            this.availableSeats.add(addThisBackToAvailable);
-        }
+        //free in the index before clearing the claim, a seat whose claim can be taken must already be carvable
+        this.availableSeats.release(staleReservationFragment);
+        this.occupancy.release(staleReservationFragment);
     }
 
     public void removeStaleSeatHolds() {
-        synchronized (this.reservations) {
-            List<SeatHold> staleSeatHolds = this.reservations.stream()
-                    .filter(r -> !r.isValid(this.clock)).collect(Collectors.toList());
-            for (SeatHold r : staleSeatHolds) {
-                for (final SeatingFragment seatingFragmentFromStaleHold : r.getSeatingFragments()) {
-                    returnSeatingFragmentToAvailablePool(seatingFragmentFromStaleHold);
-                }
-                this.reservations.remove(r);
+        //each expired hold is handed out by the queue exactly once, so concurrent sweeps never release it twice
+        for (SeatHold r : this.expiringHolds.pollExpired(this.clock)) {
+            //published before the seats can be claimed again, so a new hold on them always finds them free
+            this.availability.updateAndGet(snapshot -> snapshot.released(r.getSeatingFragments()));
+            for (final SeatingFragment seatingFragmentFromStaleHold : r.getSeatingFragments()) {
+                returnSeatingFragmentToAvailablePool(seatingFragmentFromStaleHold);
             }
+            this.reservations.remove(r);
+            this.journal.expired(r);
         }
     }
 
+    //the counts are read as they were last published, lapsed holds are given back by the next hold or sweep
     public int totalSeatsAvailable() {
-        removeStaleSeatHolds();
-        int numSeatsAvailable = availableSeats.stream().map(SeatingFragment::getSize).reduce(0, (a, b) -> a + b);
-        return numSeatsAvailable;
+        return getAvailability().getSeatsAvailable();
+    }
+
+    public int totalSeatsHeld() {
+        return getAvailability().getSeatsHeld();
+    }
+
+    public int totalSeatsReserved() {
+        return getAvailability().getSeatsReserved();
+    }
+
+    private static int seatCount(SeatHold seatHold) {
+        int numSeats = 0;
+        for (SeatingFragment fragment : seatHold.getSeatingFragments()) {
+            numSeats += fragment.getSize();
+        }
+        return numSeats;
     }
 
     public List<SeatHold> getAllSeatHolds() {
         removeStaleSeatHolds();
-        return reservations;
+        return new ArrayList<>(reservations.all());
+    }
+
+    /* the holds as they stand, without sweeping the expired ones first, for readers on threads of their own */
+    public List<SeatHold> currentSeatHolds() {
+        return new ArrayList<>(reservations.all());
+    }
+
+    /**
+     * Hands the matching holds with ids above the given one to the visitor in id order, up to limit of them, without
+     * sweeping or copying the holds.  Holds whose time is up are left out whether or not they were swept yet.
+     *
+     * @return the id to list on from when the limit was reached, empty once the listing is complete
+     */
+    public OptionalInt visitSeatHolds(SeatHoldQuery query, int afterSeatHoldId, int limit, Consumer<SeatHold> visitor) {
+        ZonedDateTime now = ZonedDateTime.now(this.clock);
+        int visited = 0;
+        int lastVisited = afterSeatHoldId;
+        for (SeatHold seatHold : this.reservations.after(afterSeatHoldId, query.getEmail())) {
+            if (visited == limit) {
+                return OptionalInt.of(lastVisited);
+            }
+            if ((seatHold.isReservation() || seatHold.getHoldExpirationTime().isAfter(now)) && query.test(seatHold)) {
+                visitor.accept(seatHold);
+                lastVisited = seatHold.getSeatHoldId();
+                visited++;
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    public Collection<SeatHold> getSeatHolds(String emailAddressOnFile) {
+        return reservations.forEmail(emailAddressOnFile);
     }
 
     public List<Seat> getAvailableSeats() {
-        List<Seat> availableSeats = this.availableSeats.stream()
+        List<Seat> availableSeats = getAvailableSeatingFragments().stream()
                 .map(SeatingFragment::getSeats)
                 .flatMap(Collection::stream)
                 .collect(Collectors.toList());
@@ -142,6 +215,16 @@ public class EventService {
     }
 
     public List<SeatingFragment> getAvailableSeatingFragments() {
+        return getAvailability().fragmentsInRowOrder();
+    }
+
+    /* the latest published availability, read without any lock and never changed afterwards */
+    public AvailabilitySnapshot getAvailability() {
+        return this.availability.get();
+    }
+
+    /* the available fragments ordered for seat searches, callers query it and leave the bookkeeping to the event */
+    public FreeFragmentIndex getAvailableFragmentIndex() {
         return this.availableSeats;
     }
 
@@ -150,4 +233,9 @@ public class EventService {
     public void setClock(Clock clock) {
         this.clock = clock;
     }
+
+    /* records every hold, confirmation and expiry from here on */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
 }
@@ -0,0 +1,50 @@
+package com.rcg.walmart.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Expires the lapsed holds of an event every so often, so reading the seat counts never has to sweep first and an
+ * event nobody holds seats in still gives its lapsed holds back.  One thread sweeps for every event.
+ */
+public class ExpirySweeper implements AutoCloseable {
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final ScheduledThreadPoolExecutor SWEEPER = sweeper();
+    private static final Logger LOG = LoggerFactory.getLogger(ExpirySweeper.class);
+
+    private final ScheduledFuture<?> sweepTask;
+
+    public ExpirySweeper(EventService eventService) {
+        this(eventService, SWEEP_INTERVAL_MILLIS);
+    }
+
+    public ExpirySweeper(EventService eventService, long sweepIntervalMillis) {
+        this.sweepTask = SWEEPER.scheduleWithFixedDelay(() -> {
+            try {
+                eventService.removeStaleSeatHolds();
+            } catch (RuntimeException e) {
+                //held seats of the event stay held until a sweep gets through
+                LOG.warn("Sweeping the expired holds of event {} failed", eventService.getEventId(), e);
+            }
+        }, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor sweeper() {
+        ScheduledThreadPoolExecutor sweeper = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "event-expiry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.setRemoveOnCancelPolicy(true);
+        return sweeper;
+    }
+
+    @Override
+    public void close() {
+        this.sweepTask.cancel(false);
+    }
+}
@@ -1,13 +1,40 @@
 package com.rcg.walmart.locking;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface LockService {
 
     public Optional<Lock> acquireLock(String lockId);
 
+    /**
+     * Acquires every one of the locks, waiting up to maxWait for the ones currently held elsewhere.  Locks are taken in
+     * lock id order whatever order they are passed in, so callers asking for overlapping sets can not deadlock.
+     *
+     * @return the locks in the order they were taken, empty if they could not all be had in time, in which case none
+     * are held
+     */
+    public Optional<List<Lock>> acquireLocks(Collection<String> lockIds, Duration maxWait);
+
+    /**
+     * Queues for the lock behind any callers already waiting for it, first come first served.
+     *
+     * @return completes with the lock once it is this caller's turn, or with a TimeoutException when that takes longer
+     * than timeout.  Cancelling the future gives up the place in the queue.
+     */
+    public CompletableFuture<Lock> acquireLockAsync(String lockId, Duration timeout);
+
+    /* acquireLocks without parking the calling thread, cancelling the future lets go of any locks already taken */
+    public CompletableFuture<List<Lock>> acquireLocksAsync(Collection<String> lockIds, Duration maxWait);
+
     public boolean releaseLock(Lock lock);
 
+    /* releases every one of the locks, true if they were all still held */
+    public boolean releaseLocks(Collection<Lock> locks);
+
 }
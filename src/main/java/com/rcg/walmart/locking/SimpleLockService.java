@@ -3,58 +3,234 @@ package com.rcg.walmart.locking;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 
 @Service
 public class SimpleLockService implements LockService {
     private static long LOCK_DURATION_SECONDS = 10;
-    private ConcurrentHashMap<String, Lock> locks;
+    //timeouts and lapsed locks are the only things needing a thread of their own, one is plenty for every service.  It
+    //only ever completes timeouts and decides hand-offs, never runs what a waiter chained onto its lock
+    private static final ScheduledThreadPoolExecutor TIMERS = timers();
+    //where a waiter handed a lock carries on, so the releasing thread never runs the next holder's work on its stack
+    private static final Executor HAND_OFFS = ForkJoinPool.commonPool();
+    private ConcurrentHashMap<String, LockState> locks;
     private Clock clock;
     //This class is a simplistic mock posing as a distributed acquireLock that would be expected to use some sort of consenseus
     //protocol to create locks prior to doing certain actions
 
+    /* the current holder of a lock id and the callers queued up for it, guarded by its own monitor */
+    private static class LockState {
+        Lock holder;
+        final Deque<CompletableFuture<Lock>> waiters = new ArrayDeque<CompletableFuture<Lock>>();
+        //set once the state is dropped from the map, whoever still reaches it has to look the lock id up again
+        boolean retired;
+    }
+
     public SimpleLockService() {
         this(Clock.system(ZoneOffset.UTC));
     }
 
     public SimpleLockService(Clock clock) {
         this.clock = clock;
-        this.locks = new ConcurrentHashMap<String, Lock>();
+        this.locks = new ConcurrentHashMap<String, LockState>();
     }
 
+    private static ScheduledThreadPoolExecutor timers() {
+        ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "lock-service-timers");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timers.setRemoveOnCancelPolicy(true);
+        return timers;
+    }
+
+    private <T> T withState(String lockId, Function<LockState, T> action) {
+        while (true) {
+            LockState state = locks.computeIfAbsent(lockId, id -> new LockState());
+            synchronized (state) {
+                if (!state.retired) {
+                    T result = action.apply(state);
+                    if (state.holder == null && state.waiters.isEmpty()) {
+                        state.retired = true;
+                        locks.remove(lockId, state);
+                    }
+                    return result;
+                }
+            }
+        }
+    }
+
+    private static boolean isHeld(LockState state, ZonedDateTime currTime) {
+        return state.holder != null && state.holder.getLockEnd().isAfter(currTime);
+    }
 
     public Optional<Lock> acquireLock(String lockId) {
-        if (locks.containsKey(lockId)) {
-            Lock lock = locks.get(lockId);
-            ZonedDateTime currTime = ZonedDateTime.now(clock);
-            if (lock.getLockEnd().isAfter(currTime)) {
-                //lock is good, return empty
+        ZonedDateTime currTime = ZonedDateTime.now(clock);
+        return withState(lockId, state -> {
+            //callers already queued for the lock go first
+            state.waiters.removeIf(CompletableFuture::isDone);
+            if (isHeld(state, currTime) || !state.waiters.isEmpty()) {
+                return Optional.<Lock>empty();
+            }
+            state.holder = new Lock(lockId, currTime.plusSeconds(LOCK_DURATION_SECONDS));
+            return Optional.of(state.holder);
+        });
+    }
+
+    public CompletableFuture<Lock> acquireLockAsync(String lockId, Duration timeout) {
+        ZonedDateTime currTime = ZonedDateTime.now(clock);
+        CompletableFuture<Lock> waiter = new CompletableFuture<Lock>();
+        Optional<Duration> lapsesIn = withState(lockId, state -> {
+            state.waiters.removeIf(CompletableFuture::isDone);
+            if (!isHeld(state, currTime) && state.waiters.isEmpty()) {
+                state.holder = new Lock(lockId, currTime.plusSeconds(LOCK_DURATION_SECONDS));
+                waiter.complete(state.holder);
+                return Optional.<Duration>empty();
+            }
+            if (timeout.isZero() || timeout.isNegative()) {
+                return Optional.<Duration>empty();
+            }
+            state.waiters.addLast(waiter);
+            //the first caller in line makes sure a lock that lapses instead of being released still gets handed on
+            return state.waiters.size() == 1 && state.holder != null
+                    ? Optional.of(Duration.between(currTime, state.holder.getLockEnd()))
+                    : Optional.<Duration>empty();
+        });
+        if (waiter.isDone()) {
+            return waiter;
+        }
+        if (timeout.isZero() || timeout.isNegative()) {
+            waiter.completeExceptionally(new TimeoutException("lock " + lockId + " is held"));
+            return waiter;
+        }
+        lapsesIn.ifPresent(delay -> scheduleHandOff(lockId, delay));
+        ScheduledFuture<?> timer = TIMERS.schedule(() ->
+                waiter.completeExceptionally(new TimeoutException("timed out waiting for lock " + lockId)),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        waiter.whenComplete((lock, error) -> {
+            timer.cancel(false);
+            if (error != null) {
+                //timed out or cancelled, leave the queue
+                withState(lockId, state -> state.waiters.remove(waiter));
+            }
+        });
+        return waiter;
+    }
+
+    private void scheduleHandOff(String lockId, Duration delay) {
+        TIMERS.schedule(() -> handOff(lockId), Math.max(0, delay.toNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /* gives a lock that is free to the longest waiting caller still interested in it */
+    private void handOff(String lockId) {
+        ZonedDateTime currTime = ZonedDateTime.now(clock);
+        Optional<Map.Entry<CompletableFuture<Lock>, Lock>> next = withState(lockId, state -> {
+            if (isHeld(state, currTime)) {
                 return Optional.empty();
+            }
+            state.holder = null;
+            CompletableFuture<Lock> waiter = state.waiters.pollFirst();
+            while (waiter != null && waiter.isDone()) {
+                waiter = state.waiters.pollFirst();
+            }
+            if (waiter == null) {
+                return Optional.empty();
+            }
+            state.holder = new Lock(lockId, currTime.plusSeconds(LOCK_DURATION_SECONDS));
+            if (!state.waiters.isEmpty()) {
+                scheduleHandOff(lockId, Duration.ofSeconds(LOCK_DURATION_SECONDS));
+            }
+            return Optional.of(new AbstractMap.SimpleImmutableEntry<CompletableFuture<Lock>, Lock>(waiter, state.holder));
+        });
+        //complete outside of the monitor and off this thread, whatever the waiter chained onto the future may release
+        //locks in turn and would otherwise nest one hold deeper on this stack for every caller in line
+        next.ifPresent(handedOff -> HAND_OFFS.execute(() -> {
+            if (!handedOff.getKey().complete(handedOff.getValue())) {
+                //the waiter gave up between leaving the queue and being handed the lock, pass it on
+                releaseLock(handedOff.getValue());
+            }
+        }));
+    }
+
+    public CompletableFuture<List<Lock>> acquireLocksAsync(Collection<String> lockIds, Duration maxWait) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        CompletableFuture<List<Lock>> result = new CompletableFuture<List<Lock>>();
+        //sorted and deduplicated, everyone takes overlapping locks in the same order
+        acquireInOrder(new TreeSet<String>(lockIds).iterator(), new ArrayList<Lock>(lockIds.size()), deadline, result);
+        return result;
+    }
+
+    private void acquireInOrder(Iterator<String> remaining, List<Lock> acquired, long deadline,
+                                CompletableFuture<List<Lock>> result) {
+        if (result.isDone()) {
+            //cancelled while waiting for an earlier lock
+            releaseLocks(acquired);
+            return;
+        }
+        if (!remaining.hasNext()) {
+            if (!result.complete(acquired)) {
+                releaseLocks(acquired);
+            }
+            return;
+        }
+        CompletableFuture<Lock> next = acquireLockAsync(remaining.next(),
+                Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        result.whenComplete((locks, error) -> {
+            if (error != null) {
+                next.cancel(false);
+            }
+        });
+        next.whenComplete((lock, error) -> {
+            if (error != null) {
+                releaseLocks(acquired);
+                result.completeExceptionally(error);
             } else {
-                locks.remove(lockId);
+                acquired.add(lock);
+                acquireInOrder(remaining, acquired, deadline, result);
             }
+        });
+    }
+
+    public Optional<List<Lock>> acquireLocks(Collection<String> lockIds, Duration maxWait) {
+        CompletableFuture<List<Lock>> pending = acquireLocksAsync(lockIds, maxWait);
+        try {
+            return Optional.of(pending.get());
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            pending.cancel(false);
+            Thread.currentThread().interrupt();
+            return Optional.empty();
         }
-        ZonedDateTime lockEnds = ZonedDateTime.now(clock).plusSeconds(LOCK_DURATION_SECONDS);
-        Lock lock = new Lock(lockId, lockEnds);
-        locks.put(lockId, lock);
-        return Optional.of(lock);
     }
 
     public boolean releaseLock(Lock lock) {
         //using the end time object as both a time and a semaphore for confirming
         //releasing correct lock
-        if (!locks.containsKey(lock.getLockId())) {
-            return false;
+        boolean released = withState(lock.getLockId(), state -> {
+            if (state.holder == null || state.holder.getLockEnd() != lock.getLockEnd()) {
+                return false;
+            }
+            state.holder = null;
+            return true;
+        });
+        if (released) {
+            handOff(lock.getLockId());
         }
+        return released;
+    }
 
-        if (locks.get(lock.getLockId()).getLockEnd() == lock.getLockEnd()) {
-            locks.remove(lock.getLockId());
-            return true;
-        } else {
-            return false;
+    public boolean releaseLocks(Collection<Lock> heldLocks) {
+        boolean allReleased = true;
+        for (Lock lock : heldLocks) {
+            allReleased &= releaseLock(lock);
         }
+        return allReleased;
     }
 }
@@ -0,0 +1,273 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+ * The availability of an event in a single binary file: every row as its seat costs and a bitset of the seats taken,
+ * followed by the table of holds and reservations.  Loading it maps the file and bulk copies the costs and bitsets out
+ * of it row by row, the free fragments are read off the bitsets, so none of the venue's cost calculations, Seat
+ * objects or hold replays of a rebuild from the venue happen.  The file carries the seat costs and is enough to bring
+ * the event up on another node without its venue.  A MappedEventJournal compacts its segments into one, recording the
+ * first segment the snapshot does not cover.
+ *
+ * Layout, big endian and every section starting on an eight byte boundary:
+ *   header   magic, version, number of rows, number of holds, first journal segment after the snapshot, event id as
+ *            length and UTF-8 bytes
+ *   row      block index, first seat number, number of seats, padding, a double per seat, a long per 64 seats
+ *   holds    hold and confirm records as framed by HoldRecords
+ */
+public final class EventSnapshot {
+    private static final int MAGIC = 0x45564e54;
+    private static final int VERSION = 2;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private EventSnapshot() {
+    }
+
+    /* what a snapshot file holds, read back without building the event yet */
+    static class Contents {
+        final String eventId;
+        final long journalSeq;
+        final Map<Integer, SeatingRow> rows;
+        final List<SeatingFragment> freeFragments;
+        final TreeMap<Integer, SeatHold> holds;
+
+        Contents(String eventId, long journalSeq, Map<Integer, SeatingRow> rows, List<SeatingFragment> freeFragments,
+                 TreeMap<Integer, SeatHold> holds) {
+            this.eventId = eventId;
+            this.journalSeq = journalSeq;
+            this.rows = rows;
+            this.freeFragments = freeFragments;
+            this.holds = holds;
+        }
+    }
+
+    /**
+     * Writes the event's availability to the file, replacing it once complete.  The taken seats are worked out from
+     * the same copy of the holds the hold table is written from, so the two agree even with holds being taken while
+     * the snapshot is written.
+     */
+    public static void write(EventService eventService, Path file) throws IOException {
+        write(eventService, file, 0);
+    }
+
+    /**
+     * @param journalSeq the first journal segment whose records are not in the snapshot
+     */
+    static void write(EventService eventService, Path file, long journalSeq) throws IOException {
+        //every row has a free seat or a seat in one of the holds, a row taken up by holds that expire while the holds
+        //are collected shows up in the free fragments read afterwards
+        TreeMap<Integer, SeatingRow> rows = new TreeMap<Integer, SeatingRow>();
+        addRows(eventService.getAvailableSeatingFragments(), rows);
+        //as they stand, a snapshot taken off the event's own threads must not sweep and journal expiries
+        List<SeatHold> holds = eventService.currentSeatHolds();
+        addRows(eventService.getAvailableSeatingFragments(), rows);
+        Map<Integer, long[]> takenSeats = new HashMap<Integer, long[]>();
+        for (SeatHold seatHold : holds) {
+            for (SeatingFragment fragment : seatHold.getSeatingFragments()) {
+                SeatingRow row = fragment.row();
+                rows.putIfAbsent(row.getBlockIndex(), row);
+                long[] words = takenSeats.computeIfAbsent(row.getBlockIndex(), blockIndex -> new long[wordsFor(row)]);
+                for (int offset = fragment.getStartIndex() - row.getFirstSeatNumber();
+                     offset <= fragment.getEndIndex() - row.getFirstSeatNumber(); offset++) {
+                    words[offset >>> 6] |= 1L << offset;
+                }
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            byte[] eventId = eventService.getEventId().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(holds.size()).putLong(journalSeq)
+                    .putInt(eventId.length).put(eventId);
+            pad(buffer);
+            for (SeatingRow row : rows.values()) {
+                ensureRoom(channel, buffer, 16);
+                buffer.putInt(row.getBlockIndex()).putInt(row.getFirstSeatNumber()).putInt(row.getLength()).putInt(0);
+                for (int seatNumber = row.getFirstSeatNumber(); seatNumber <= row.getLastSeatNumber(); seatNumber++) {
+                    ensureRoom(channel, buffer, 8);
+                    buffer.putDouble(row.getSeatCost(seatNumber));
+                }
+                long[] words = takenSeats.get(row.getBlockIndex());
+                for (int word = 0; word < wordsFor(row); word++) {
+                    ensureRoom(channel, buffer, 8);
+                    buffer.putLong(words == null ? 0 : words[word]);
+                }
+            }
+            for (SeatHold seatHold : holds) {
+                put(channel, buffer, HoldRecords.hold(seatHold));
+                if (seatHold.isReservation()) {
+                    put(channel, buffer, HoldRecords.confirm(seatHold));
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void addRows(List<SeatingFragment> fragments, Map<Integer, SeatingRow> rows) {
+        for (SeatingFragment fragment : fragments) {
+            rows.putIfAbsent(fragment.getBlockIndex(), fragment.row());
+        }
+    }
+
+    /* builds the event the file was written from, holds that expired in the meantime are swept as usual */
+    public static EventService read(Path file) throws IOException {
+        Contents contents = load(file);
+        return new EventService(contents.eventId, contents.freeFragments,
+                new ArrayList<SeatHold>(contents.holds.values()));
+    }
+
+    /* the first journal segment the snapshot does not cover, read off the header alone */
+    static long journalSeq(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(24);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            readHeader(header, file);
+            //past the counts
+            return header.getLong(16);
+        }
+    }
+
+    //checks the magic and version and leaves the buffer at the number of rows
+    private static void readHeader(ByteBuffer snapshot, Path file) throws IOException {
+        if (snapshot.remaining() < 24 || snapshot.getInt() != MAGIC) {
+            throw new IOException("not an event snapshot: " + file);
+        }
+        int version = snapshot.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported event snapshot version " + version + ": " + file);
+        }
+    }
+
+    static Contents load(Path file) throws IOException {
+        MappedByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //the mapping outlives the channel
+            snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            readHeader(snapshot, file);
+            int numRows = snapshot.getInt();
+            int numHolds = snapshot.getInt();
+            long journalSeq = snapshot.getLong();
+            byte[] eventId = new byte[snapshot.getInt()];
+            snapshot.get(eventId);
+            skipPadding(snapshot);
+
+            Map<Integer, SeatingRow> rows = new HashMap<Integer, SeatingRow>(numRows * 2);
+            List<SeatingFragment> freeFragments = new ArrayList<SeatingFragment>();
+            for (int i = 0; i < numRows; i++) {
+                int blockIndex = snapshot.getInt();
+                int firstSeatNumber = snapshot.getInt();
+                int length = snapshot.getInt();
+                snapshot.getInt();
+                double[] seatCosts = new double[length];
+                snapshot.asDoubleBuffer().get(seatCosts);
+                snapshot.position(snapshot.position() + length * 8);
+                long[] words = new long[(length + 63) >>> 6];
+                snapshot.asLongBuffer().get(words);
+                snapshot.position(snapshot.position() + words.length * 8);
+                SeatingRow row = new SeatingRow(blockIndex, firstSeatNumber, seatCosts);
+                rows.put(blockIndex, row);
+                addFreeRuns(row, words, freeFragments);
+            }
+
+            TreeMap<Integer, SeatHold> holds = new TreeMap<Integer, SeatHold>();
+            if (!HoldRecords.replay(snapshot, holds, rows) || holds.size() != numHolds) {
+                throw new IOException("truncated event snapshot: " + file);
+            }
+            return new Contents(new String(eventId, StandardCharsets.UTF_8), journalSeq, rows, freeFragments, holds);
+        } catch (BufferUnderflowException | IllegalArgumentException | IllegalStateException | NegativeArraySizeException e) {
+            throw new IOException("corrupt event snapshot: " + file, e);
+        }
+    }
+
+    /* a fragment for every run of clear bits in the row's bitset */
+    private static void addFreeRuns(SeatingRow row, long[] words, List<SeatingFragment> freeFragments) {
+        int length = row.getLength();
+        int offset = nextBit(words, 0, length, false);
+        while (offset < length) {
+            int endOfRun = nextBit(words, offset, length, true);
+            freeFragments.add(new SeatingFragment(row, row.getFirstSeatNumber() + offset,
+                    row.getFirstSeatNumber() + endOfRun - 1));
+            offset = nextBit(words, endOfRun, length, false);
+        }
+    }
+
+    //the offset of the first bit from the given one that is set, or clear, length if there is none
+    private static int nextBit(long[] words, int from, int length, boolean set) {
+        if (from >= length) {
+            return length;
+        }
+        int word = from >>> 6;
+        long bits = (set ? words[word] : ~words[word]) & (-1L << from);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return length;
+            }
+            bits = set ? words[word] : ~words[word];
+        }
+        return Math.min(length, (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    private static int wordsFor(SeatingRow row) {
+        return (row.getLength() + 63) >>> 6;
+    }
+
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 7) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void skipPadding(ByteBuffer buffer) {
+        buffer.position((buffer.position() + 7) & ~7);
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, ByteBuffer record) throws IOException {
+        if (record.remaining() > buffer.capacity()) {
+            drain(channel, buffer);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } else {
+            ensureRoom(channel, buffer, record.remaining());
+            buffer.put(record);
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
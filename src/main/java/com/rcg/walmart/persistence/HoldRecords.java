@@ -0,0 +1,184 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * The binary form of hold, confirm and expire records.  Every record is framed as its payload length, a CRC32 of the
+ * payload and the payload itself, so a reader stops cleanly at the zero length following the last record or at a
+ * record torn by a crash part way through writing it.
+ */
+final class HoldRecords {
+    static final byte HOLD = 1;
+    static final byte CONFIRM = 2;
+    static final byte EXPIRE = 3;
+    static final int FRAME_HEADER_BYTES = 8;
+
+    //encoding happens before taking the journal's lock, into a buffer of the writing thread's own
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+    private HoldRecords() {
+    }
+
+    /* a framed hold record, valid until the calling thread encodes its next record */
+    static ByteBuffer hold(SeatHold seatHold) {
+        while (true) {
+            ByteBuffer buffer = startFrame();
+            try {
+                buffer.put(HOLD);
+                buffer.putInt(seatHold.getSeatHoldId());
+                putTime(buffer, seatHold.getHoldTime());
+                buffer.putInt(seatHold.getHoldDurationMinutes());
+                putString(buffer, seatHold.getEmail());
+                buffer.putInt(seatHold.getSeatingFragments().size());
+                for (SeatingFragment fragment : seatHold.getSeatingFragments()) {
+                    buffer.putInt(fragment.getBlockIndex());
+                    buffer.putInt(fragment.getStartIndex());
+                    buffer.putInt(fragment.getEndIndex());
+                }
+                return endFrame(buffer);
+            } catch (BufferOverflowException e) {
+                growScratch();
+            }
+        }
+    }
+
+    static ByteBuffer confirm(SeatHold seatHold) {
+        while (true) {
+            ByteBuffer buffer = startFrame();
+            try {
+                buffer.put(CONFIRM);
+                buffer.putInt(seatHold.getSeatHoldId());
+                putTime(buffer, seatHold.getConfirmationTime());
+                putString(buffer, seatHold.getConfirmationCode());
+                return endFrame(buffer);
+            } catch (BufferOverflowException e) {
+                growScratch();
+            }
+        }
+    }
+
+    static ByteBuffer expire(SeatHold seatHold) {
+        ByteBuffer buffer = startFrame();
+        buffer.put(EXPIRE);
+        buffer.putInt(seatHold.getSeatHoldId());
+        return endFrame(buffer);
+    }
+
+    private static ByteBuffer startFrame() {
+        ByteBuffer buffer = SCRATCH.get();
+        buffer.clear();
+        buffer.position(FRAME_HEADER_BYTES);
+        return buffer;
+    }
+
+    private static ByteBuffer endFrame(ByteBuffer buffer) {
+        int payloadLength = buffer.position() - FRAME_HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_HEADER_BYTES, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void growScratch() {
+        SCRATCH.set(ByteBuffer.allocate(SCRATCH.get().capacity() * 2));
+    }
+
+    /**
+     * Applies the records from the buffer's position on to the holds, stopping at the end of the written records.
+     *
+     * @return false if reading stopped at a torn or corrupt record rather than at the end of the records
+     */
+    static boolean replay(ByteBuffer records, Map<Integer, SeatHold> holds, Map<Integer, SeatingRow> rows) {
+        while (records.remaining() >= FRAME_HEADER_BYTES) {
+            int payloadLength = records.getInt();
+            int expectedCrc = records.getInt();
+            if (payloadLength == 0) {
+                return true;
+            }
+            if (payloadLength < 0 || payloadLength > records.remaining()) {
+                return false;
+            }
+            ByteBuffer payload = records.slice();
+            payload.limit(payloadLength);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                return false;
+            }
+            apply(payload, holds, rows);
+            records.position(records.position() + payloadLength);
+        }
+        return true;
+    }
+
+    private static void apply(ByteBuffer payload, Map<Integer, SeatHold> holds, Map<Integer, SeatingRow> rows) {
+        byte type = payload.get();
+        int seatHoldId = payload.getInt();
+        if (type == HOLD) {
+            ZonedDateTime holdTime = getTime(payload);
+            int holdDurationMinutes = payload.getInt();
+            String email = getString(payload);
+            int numFragments = payload.getInt();
+            List<SeatingFragment> fragments = new ArrayList<SeatingFragment>(numFragments);
+            for (int i = 0; i < numFragments; i++) {
+                SeatingRow row = rows.get(payload.getInt());
+                int startIndex = payload.getInt();
+                int endIndex = payload.getInt();
+                if (row == null) {
+                    throw new IllegalStateException("hold " + seatHoldId + " refers to a row the venue does not have");
+                }
+                fragments.add(new SeatingFragment(row, startIndex, endIndex));
+            }
+            //a snapshot and the journal after it can both carry a hold, the first one read wins
+            holds.putIfAbsent(seatHoldId, new SeatHold(seatHoldId, fragments, email, holdTime, holdDurationMinutes));
+        } else if (type == CONFIRM) {
+            ZonedDateTime confirmationTime = getTime(payload);
+            String confirmationCode = getString(payload);
+            SeatHold seatHold = holds.get(seatHoldId);
+            if (seatHold != null) {
+                seatHold.restoreConfirmation(confirmationCode, confirmationTime);
+            }
+        } else if (type == EXPIRE) {
+            holds.remove(seatHoldId);
+        } else {
+            throw new IllegalStateException("unknown record type " + type);
+        }
+    }
+
+    private static void putTime(ByteBuffer buffer, ZonedDateTime time) {
+        Instant instant = time.toInstant();
+        buffer.putLong(instant.getEpochSecond());
+        buffer.putInt(instant.getNano());
+    }
+
+    private static ZonedDateTime getTime(ByteBuffer buffer) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()), ZoneOffset.UTC);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,443 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.event.EventJournal;
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingRow;
+import com.rcg.walmart.venue.Venue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/*
+ * An append-only journal of the holds of one event in a directory of memory-mapped segment files.  Appending copies
+ * the record into the mapped segment and returns, the record is in the page cache and survives the process dying at
+ * that point.  Forcing the pages to disk is left to a shared flusher thread which does it every few milliseconds for
+ * all of the records appended since its last run, so a crash of the whole machine loses at most that window.  The
+ * flusher also creates each segment before it is needed, so the append that fills a segment goes straight on in the
+ * next one.
+ *
+ * Every few segments an EventSnapshot of the event is written and the segments the snapshot covers deleted, which
+ * keeps both the directory and the replay on startup bounded by the live holds rather than by history.  Snapshots are
+ * written by a compactor thread of their own, a large event being written out never holds up the flushing of the rest.
+ */
+public class MappedEventJournal implements EventJournal {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_SEGMENTS_PER_SNAPSHOT = 4;
+    private static final long DEFAULT_FLUSH_INTERVAL_MICROS = 2000;
+    private static final ScheduledThreadPoolExecutor FLUSHER = flusher();
+    private static final ExecutorService COMPACTOR = compactor();
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEventJournal.class);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int segmentsPerSnapshot;
+    private final EventService eventService;
+    private final ScheduledFuture<?> flushTask;
+    private final AtomicBoolean compactionQueued;
+    //held for the whole of a snapshot, closing waits on it so the snapshot is in place before anyone reads it back
+    private final Object snapshotLock = new Object();
+    //the segment being appended to, guarded by this
+    private long segmentSeq;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    //the segment to go on with once that one is full, created ahead by the flusher, guarded by this
+    private FileChannel nextChannel;
+    private MappedByteBuffer nextSegment;
+    private boolean creatingNextSegment;
+    //full segments not forced yet, the flusher does it so the appender that filled them does not wait, guarded by this
+    private final List<MappedByteBuffer> fullSegments = new ArrayList<MappedByteBuffer>();
+    //held while forcing and creating segments, closing waits on it so nothing is left half done when it returns
+    private final Object flushLock = new Object();
+    private long firstUnsnapshottedSeq;
+    //after a failed compaction the next one waits for another segment, guarded by this
+    private long retryCompactionAtSeq;
+    private boolean closed;
+    private volatile boolean dirty;
+    //only flush runs see this, it keeps a disk that fails every run from logging every run
+    private boolean flushFailing;
+
+    private MappedEventJournal(Path directory, int segmentBytes, int segmentsPerSnapshot, long flushIntervalMicros,
+                               EventService eventService) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentsPerSnapshot = segmentsPerSnapshot;
+        this.eventService = eventService;
+        this.compactionQueued = new AtomicBoolean();
+        List<Long> existing = segmentSeqs(directory);
+        this.firstUnsnapshottedSeq = existing.isEmpty() ? snapshotJournalSeq(directory) : existing.get(0);
+        //never append behind records of an earlier run, start a segment of our own
+        this.segmentSeq = existing.isEmpty() ? this.firstUnsnapshottedSeq : existing.get(existing.size() - 1) + 1;
+        openSegment();
+        this.flushTask = FLUSHER.scheduleWithFixedDelay(this::flushAndCompact, flushIntervalMicros, flushIntervalMicros,
+                TimeUnit.MICROSECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor flusher() {
+        ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "event-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.setRemoveOnCancelPolicy(true);
+        return flusher;
+    }
+
+    private static ExecutorService compactor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the journal in the directory for appending, after the event has been read back with recover.
+     *
+     * @param eventService the event journaling to it, for the periodic snapshots
+     */
+    public static MappedEventJournal open(Path directory, EventService eventService) throws IOException {
+        return open(directory, eventService, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENTS_PER_SNAPSHOT,
+                DEFAULT_FLUSH_INTERVAL_MICROS);
+    }
+
+    public static MappedEventJournal open(Path directory, EventService eventService, int segmentBytes,
+                                          int segmentsPerSnapshot, long flushIntervalMicros) throws IOException {
+        Files.createDirectories(directory);
+        return new MappedEventJournal(directory, segmentBytes, segmentsPerSnapshot, flushIntervalMicros, eventService);
+    }
+
+    /**
+     * Rebuilds the event recorded in the directory.  The free seats are read off the latest snapshot, only the holds
+     * made or expired in the segments written after it are carved out of them or given back, so the venue is only
+     * needed for an event that has not been snapshotted yet.  Holds that expired since are swept as usual.
+     */
+    public static EventService recover(Path directory, String eventId, Venue venue) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return EventService.inVenue(eventId, venue, replay(directory, venue));
+        }
+        EventSnapshot.Contents contents = EventSnapshot.load(snapshot);
+        Map<Integer, SeatHold> inSnapshot = new HashMap<Integer, SeatHold>(contents.holds);
+        replaySegments(directory, contents.journalSeq, contents.holds, contents.rows);
+        FreeFragmentIndex freeSeats = new FreeFragmentIndex(contents.freeFragments);
+        for (SeatHold expired : inSnapshot.values()) {
+            if (!contents.holds.containsKey(expired.getSeatHoldId())) {
+                expired.getSeatingFragments().forEach(freeSeats::release);
+            }
+        }
+        for (SeatHold held : contents.holds.values()) {
+            if (!inSnapshot.containsKey(held.getSeatHoldId())) {
+                held.getSeatingFragments().forEach(freeSeats::carve);
+            }
+        }
+        return new EventService(eventId, freeSeats.inRowOrder(), new ArrayList<SeatHold>(contents.holds.values()));
+    }
+
+    /**
+     * Reads back the holds and reservations recorded in the directory, the latest snapshot first and then the segments
+     * written after it.  Holds that expired since are returned as they were, the event sweeps them as usual.
+     *
+     * @return the live holds ordered by seat hold id, empty for a directory with no journal in it
+     */
+    public static List<SeatHold> replay(Path directory, Venue venue) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<SeatHold>();
+        }
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            EventSnapshot.Contents contents = EventSnapshot.load(snapshot);
+            replaySegments(directory, contents.journalSeq, contents.holds, contents.rows);
+            return new ArrayList<SeatHold>(contents.holds.values());
+        }
+        Map<Integer, SeatingRow> rows = new HashMap<Integer, SeatingRow>();
+        for (SeatingRow row : venue.getSeatingRows()) {
+            rows.put(row.getBlockIndex(), row);
+        }
+        TreeMap<Integer, SeatHold> holds = new TreeMap<Integer, SeatHold>();
+        replaySegments(directory, 0, holds, rows);
+        return new ArrayList<SeatHold>(holds.values());
+    }
+
+    private static void replaySegments(Path directory, long firstSeq, Map<Integer, SeatHold> holds,
+                                       Map<Integer, SeatingRow> rows) throws IOException {
+        for (long seq : segmentSeqs(directory)) {
+            if (seq < firstSeq) {
+                //already in the snapshot, left behind by a compaction that did not get to delete it
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, seq), StandardOpenOption.READ)) {
+                //a torn record can only be the last thing a crashed run wrote, the segment ends there
+                HoldRecords.replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), holds, rows);
+            }
+        }
+    }
+
+    @Override
+    public void held(SeatHold seatHold) {
+        append(HoldRecords.hold(seatHold));
+    }
+
+    @Override
+    public void confirmed(SeatHold seatHold) {
+        append(HoldRecords.confirm(seatHold));
+    }
+
+    @Override
+    public void expired(SeatHold seatHold) {
+        append(HoldRecords.expire(seatHold));
+    }
+
+    private synchronized void append(ByteBuffer record) {
+        if (this.closed) {
+            throw new IllegalStateException("journal closed: " + this.directory);
+        }
+        try {
+            if (record.remaining() > this.segment.remaining()) {
+                if (record.remaining() > this.segmentBytes) {
+                    throw new IllegalArgumentException("record of " + record.remaining() + " bytes exceeds the segment size");
+                }
+                rollSegment();
+            }
+            this.segment.put(record);
+            this.dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //guarded by this
+    private void rollSegment() throws IOException {
+        boolean interrupted = false;
+        //the flusher is creating the next segment this moment, waiting for it is quicker than creating another
+        while (this.creatingNextSegment) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.closed) {
+            throw new IllegalStateException("journal closed: " + this.directory);
+        }
+        this.segmentChannel.close();
+        this.fullSegments.add(this.segment);
+        this.dirty = true;
+        this.segmentSeq++;
+        if (this.nextSegment == null) {
+            //filled before the flusher got round to it
+            openSegment();
+        } else {
+            this.segmentChannel = this.nextChannel;
+            this.segment = this.nextSegment;
+            this.nextChannel = null;
+            this.nextSegment = null;
+        }
+    }
+
+    //guarded by this
+    private void openSegment() throws IOException {
+        this.segmentChannel = FileChannel.open(segmentPath(this.directory, this.segmentSeq),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+    }
+
+    /* creates and maps the segment to go on with when the one being appended to is full, unless there is one */
+    private void createNextSegment() throws IOException {
+        synchronized (this.flushLock) {
+            long seq;
+            synchronized (this) {
+                if (this.closed || this.nextSegment != null) {
+                    return;
+                }
+                seq = this.segmentSeq + 1;
+                this.creatingNextSegment = true;
+            }
+            try {
+                FileChannel channel = FileChannel.open(segmentPath(this.directory, seq),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    MappedByteBuffer next = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+                    synchronized (this) {
+                        this.nextChannel = channel;
+                        this.nextSegment = next;
+                    }
+                } catch (IOException e) {
+                    channel.close();
+                    Files.deleteIfExists(segmentPath(this.directory, seq));
+                    throw e;
+                }
+            } finally {
+                synchronized (this) {
+                    this.creatingNextSegment = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /* forces every record appended so far to disk */
+    public void flush() {
+        synchronized (this.flushLock) {
+            List<MappedByteBuffer> full;
+            MappedByteBuffer toForce;
+            synchronized (this) {
+                if (this.closed || !this.dirty) {
+                    return;
+                }
+                this.dirty = false;
+                full = new ArrayList<MappedByteBuffer>(this.fullSegments);
+                this.fullSegments.clear();
+                toForce = this.segment;
+            }
+            //forcing takes the longest, appends carry on meanwhile, the full segments go first as replay reads them first
+            full.forEach(MappedByteBuffer::force);
+            toForce.force();
+        }
+    }
+
+    private void flushAndCompact() {
+        try {
+            flush();
+            createNextSegment();
+            if (this.flushFailing) {
+                this.flushFailing = false;
+                LOG.info("Flushing the journal in {} works again", this.directory);
+            }
+        } catch (RuntimeException | IOException e) {
+            if (!this.flushFailing) {
+                this.flushFailing = true;
+                LOG.warn("Flushing the journal in {} failed, records appended since are not on disk yet", this.directory, e);
+            }
+        }
+        boolean snapshotDue;
+        synchronized (this) {
+            snapshotDue = !this.closed && this.segmentSeq >= this.retryCompactionAtSeq
+                    && this.segmentSeq - this.firstUnsnapshottedSeq >= this.segmentsPerSnapshot;
+        }
+        if (snapshotDue && this.compactionQueued.compareAndSet(false, true)) {
+            COMPACTOR.execute(this::compact);
+        }
+    }
+
+    private void compact() {
+        try {
+            snapshot();
+        } catch (RuntimeException | IOException e) {
+            synchronized (this) {
+                this.retryCompactionAtSeq = this.segmentSeq + 1;
+            }
+            LOG.warn("Compacting the journal in {} failed, trying again once another segment is full", this.directory, e);
+        } finally {
+            this.compactionQueued.set(false);
+        }
+    }
+
+    /**
+     * Writes the event to the snapshot file and deletes the segments it makes redundant.  Appends carry on while
+     * the snapshot is written, they go to a segment started for the purpose which replay reads after the snapshot.
+     */
+    public void snapshot() throws IOException {
+        synchronized (this.snapshotLock) {
+            long firstSeqAfterSnapshot;
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                rollSegment();
+                firstSeqAfterSnapshot = this.segmentSeq;
+            }
+            //every change in the segments before the new one is visible in the event by now, changes made while
+            //writing it out are also in the new segment and replaying those over the snapshot is harmless
+            EventSnapshot.write(this.eventService, this.directory.resolve(SNAPSHOT_FILE), firstSeqAfterSnapshot);
+            for (long seq : segmentSeqs(this.directory)) {
+                if (seq < firstSeqAfterSnapshot) {
+                    Files.deleteIfExists(segmentPath(this.directory, seq));
+                }
+            }
+            synchronized (this) {
+                this.firstUnsnapshottedSeq = firstSeqAfterSnapshot;
+            }
+        }
+    }
+
+    /**
+     * Forces what is left to disk and stops appending.  A snapshot under way is finished first, the directory can be
+     * read back as soon as this returns.
+     */
+    @Override
+    public void close() {
+        this.flushTask.cancel(false);
+        synchronized (this.snapshotLock) {
+            synchronized (this.flushLock) {
+                synchronized (this) {
+                    if (this.closed) {
+                        return;
+                    }
+                    this.closed = true;
+                    this.fullSegments.forEach(MappedByteBuffer::force);
+                    this.fullSegments.clear();
+                    this.segment.force();
+                    try {
+                        this.segmentChannel.close();
+                        if (this.nextChannel != null) {
+                            //never appended to, the next run starts a segment of its own anyway
+                            this.nextChannel.close();
+                            Files.deleteIfExists(segmentPath(this.directory, this.segmentSeq + 1));
+                            this.nextChannel = null;
+                            this.nextSegment = null;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long snapshotJournalSeq(Path directory) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        return Files.exists(snapshot) ? EventSnapshot.journalSeq(snapshot) : 0;
+    }
+
+    private static Path segmentPath(Path directory, long seq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    /* the sequence numbers of the segments in the directory, oldest first */
+    private static List<Long> segmentSeqs(Path directory) throws IOException {
+        List<Long> seqs = new ArrayList<Long>();
+        if (!Files.isDirectory(directory)) {
+            return seqs;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> seqs.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+}
@@ -7,10 +7,11 @@ import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SeatHold {
 
-    private static int counter;
+    private static final AtomicInteger counter = new AtomicInteger();
 
     private int seatHoldId;
     private List<SeatingFragment> seatingFragments;
@@ -19,6 +20,8 @@ public class SeatHold {
     private ZonedDateTime holdTime;
     private ZonedDateTime confirmationTime;
     private int holdDurationMinutes;
+    private ZonedDateTime holdExpirationTime;
+    private boolean expired;
 
 
     public int getSeatHoldId() {
@@ -49,8 +52,20 @@ public class SeatHold {
         return confirmationTime;
     }
 
-    public Optional<String> confirmReservation(Clock timeprovider) {
-        if (!isHold() || !isValid(timeprovider)){
+    public ZonedDateTime getHoldTime() {
+        return holdTime;
+    }
+
+    public int getHoldDurationMinutes() {
+        return holdDurationMinutes;
+    }
+
+    public ZonedDateTime getHoldExpirationTime() {
+        return holdExpirationTime;
+    }
+
+    public synchronized Optional<String> confirmReservation(Clock timeprovider) {
+        if (!isHold() || this.expired || !isValid(timeprovider)){
             return Optional.empty();
         }
         this.confirmationTime = ZonedDateTime.now(timeprovider);
@@ -64,18 +79,39 @@ public class SeatHold {
 
     public boolean isValid(Clock timeprovider) {
         ZonedDateTime now = ZonedDateTime.now(timeprovider);
-        boolean result = isConfirmedReservation() || this.holdTime.plusMinutes(this.holdDurationMinutes)
-                .isAfter(now);
+        boolean result = isConfirmedReservation() || this.holdExpirationTime.isAfter(now);
         return result;
 
     }
 
+    /* marks an unconfirmed hold whose time is up as expired, after which it can no longer be confirmed */
+    public synchronized boolean expire(ZonedDateTime now) {
+        if (isConfirmedReservation() || this.holdExpirationTime.isAfter(now)) {
+            return false;
+        }
+        this.expired = true;
+        return true;
+    }
+
+    /* puts back the confirmation of a reservation read back from storage */
+    public synchronized void restoreConfirmation(String confirmationCode, ZonedDateTime confirmationTime) {
+        this.confirmationCode = confirmationCode;
+        this.confirmationTime = confirmationTime;
+    }
+
     public SeatHold(List<SeatingFragment> seatingFragments, String emailAddress, ZonedDateTime holdTime, int holdDurationMinutes) {
-        this.seatHoldId = ++SeatHold.counter;
+        this(SeatHold.counter.incrementAndGet(), seatingFragments, emailAddress, holdTime, holdDurationMinutes);
+    }
+
+    /* a hold read back from storage, new holds are numbered after the highest id restored */
+    public SeatHold(int seatHoldId, List<SeatingFragment> seatingFragments, String emailAddress, ZonedDateTime holdTime, int holdDurationMinutes) {
+        SeatHold.counter.accumulateAndGet(seatHoldId, Math::max);
+        this.seatHoldId = seatHoldId;
         this.seatingFragments = seatingFragments;
         this.confirmationCode = null;
         this.emailAddress = emailAddress;
         this.holdTime = holdTime;
         this.holdDurationMinutes = holdDurationMinutes;
+        this.holdExpirationTime = holdTime.plusMinutes(holdDurationMinutes);
     }
 }
@@ -0,0 +1,50 @@
+package com.rcg.walmart.seathold;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Seat holds ordered by the time their hold runs out.  Sweeping for stale holds only looks at the head of the queue,
+ * so a sweep costs nothing when no hold has expired and touches only the expired holds when some have.  Holds that
+ * were confirmed in the meantime are simply dropped when their deadline comes up.
+ */
+public class SeatHoldExpiryQueue {
+    private final PriorityQueue<SeatHold> byDeadline;
+
+    public SeatHoldExpiryQueue() {
+        this.byDeadline = new PriorityQueue<SeatHold>(Comparator.comparing(SeatHold::getHoldExpirationTime));
+    }
+
+    public synchronized void add(SeatHold seatHold) {
+        this.byDeadline.add(seatHold);
+    }
+
+    public synchronized int size() {
+        return this.byDeadline.size();
+    }
+
+    /**
+     * Removes every hold whose deadline has passed.  The clock is only consulted when there is something queued.
+     *
+     * @return the unconfirmed holds that expired, each already marked as expired
+     */
+    public synchronized List<SeatHold> pollExpired(Clock clock) {
+        if (this.byDeadline.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        List<SeatHold> expired = new ArrayList<SeatHold>();
+        while (!this.byDeadline.isEmpty() && !this.byDeadline.peek().getHoldExpirationTime().isAfter(now)) {
+            SeatHold seatHold = this.byDeadline.poll();
+            if (seatHold.expire(now)) {
+                expired.add(seatHold);
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,49 @@
+package com.rcg.walmart.seathold;
+
+import java.time.ZonedDateTime;
+import java.util.function.Predicate;
+
+/* which holds a listing wants, every filter left null lets all holds through */
+public class SeatHoldQuery implements Predicate<SeatHold> {
+    public enum Status {
+        HELD, RESERVED
+    }
+
+    public static final SeatHoldQuery ALL = new SeatHoldQuery(null, null, null, null);
+
+    private final Status status;
+    private final String email;
+    private final ZonedDateTime heldFrom;
+    private final ZonedDateTime heldBefore;
+
+    /**
+     * @param heldFrom   the earliest hold time to include
+     * @param heldBefore the hold time from which on holds are left out
+     */
+    public SeatHoldQuery(Status status, String email, ZonedDateTime heldFrom, ZonedDateTime heldBefore) {
+        this.status = status;
+        this.email = email;
+        this.heldFrom = heldFrom;
+        this.heldBefore = heldBefore;
+    }
+
+    /* the customer's holds only, null for every customer */
+    public String getEmail() {
+        return email;
+    }
+
+    @Override
+    public boolean test(SeatHold seatHold) {
+        if (this.status == Status.HELD && !seatHold.isHold()
+                || this.status == Status.RESERVED && !seatHold.isReservation()) {
+            return false;
+        }
+        if (this.email != null && !this.email.equals(seatHold.getEmail())) {
+            return false;
+        }
+        if (this.heldFrom != null && seatHold.getHoldTime().isBefore(this.heldFrom)) {
+            return false;
+        }
+        return this.heldBefore == null || seatHold.getHoldTime().isBefore(this.heldBefore);
+    }
+}
@@ -0,0 +1,85 @@
+package com.rcg.walmart.seathold;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+ * All of the holds and confirmed reservations of an event keyed by seat hold id, with a secondary index by customer
+ * email.  Looking a hold up is a search of the id ordered map, never a walk over every reservation the event has
+ * accumulated.  Ids are handed out in increasing order, so keeping them sorted lets listings page through the holds
+ * from any id on.
+ */
+public class SeatHoldRegistry {
+    private final ConcurrentSkipListMap<Integer, SeatHold> byId;
+    private final ConcurrentHashMap<String, Set<SeatHold>> byEmail;
+
+    public SeatHoldRegistry() {
+        this.byId = new ConcurrentSkipListMap<Integer, SeatHold>();
+        this.byEmail = new ConcurrentHashMap<String, Set<SeatHold>>();
+    }
+
+    public void register(SeatHold seatHold) {
+        this.byId.put(seatHold.getSeatHoldId(), seatHold);
+        this.byEmail.computeIfAbsent(seatHold.getEmail(), email -> ConcurrentHashMap.newKeySet()).add(seatHold);
+    }
+
+    public boolean remove(SeatHold seatHold) {
+        if (!this.byId.remove(seatHold.getSeatHoldId(), seatHold)) {
+            return false;
+        }
+        this.byEmail.computeIfPresent(seatHold.getEmail(), (email, holds) -> {
+            holds.remove(seatHold);
+            return holds.isEmpty() ? null : holds;
+        });
+        return true;
+    }
+
+    /* the hold with the given id, only when it belongs to the given customer */
+    public Optional<SeatHold> find(int seatHoldId, String emailAddress) {
+        SeatHold seatHold = this.byId.get(seatHoldId);
+        if (seatHold == null || !seatHold.getEmail().equals(emailAddress)) {
+            return Optional.empty();
+        }
+        return Optional.of(seatHold);
+    }
+
+    public Collection<SeatHold> forEmail(String emailAddress) {
+        Set<SeatHold> holds = this.byEmail.get(emailAddress);
+        return holds == null ? Collections.emptySet() : Collections.unmodifiableSet(holds);
+    }
+
+    /**
+     * The holds with ids above the given one in id order, walked lazily so a listing never copies the registry.
+     *
+     * @param emailAddress the customer whose holds to walk, null for every customer
+     */
+    public Iterable<SeatHold> after(int seatHoldId, String emailAddress) {
+        if (emailAddress == null) {
+            return Collections.unmodifiableCollection(this.byId.tailMap(seatHoldId, false).values());
+        }
+        //a customer holds few seats, their holds are copied and sorted
+        List<SeatHold> holds = new ArrayList<SeatHold>();
+        for (SeatHold seatHold : forEmail(emailAddress)) {
+            if (seatHold.getSeatHoldId() > seatHoldId) {
+                holds.add(seatHold);
+            }
+        }
+        holds.sort(Comparator.comparingInt(SeatHold::getSeatHoldId));
+        return holds;
+    }
+
+    public Collection<SeatHold> all() {
+        return Collections.unmodifiableCollection(this.byId.values());
+    }
+
+    public int size() {
+        return this.byId.size();
+    }
+}
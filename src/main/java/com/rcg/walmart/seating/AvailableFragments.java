@@ -0,0 +1,19 @@
+package com.rcg.walmart.seating;
+
+import java.util.Optional;
+
+/*
+ * The free fragments as a seat search reads them.  The live FreeFragmentIndex is one, an event's published availability
+ * snapshot another, so previews run the same search over a version of the seats nobody is changing.
+ */
+public interface AvailableFragments {
+
+    /* all free fragments, largest then cheapest first */
+    Iterable<SeatingFragment> largestFirst();
+
+    /* every free fragment holding at least numSeats seats, largest then cheapest first */
+    Iterable<SeatingFragment> atLeast(int numSeats);
+
+    /* the cheapest window of numSeats seats within a single fragment, on ties the one whose fragment comes first */
+    Optional<SeatingFragment> cheapestBlock(int numSeats);
+}
@@ -0,0 +1,189 @@
+package com.rcg.walmart.seating;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The cheapest window of seats for each of the common group sizes, kept per row so a change to a row only costs
+ * pricing that row again.  Every fragment added to or removed from the FreeFragmentIndex marks its row stale for all
+ * sizes, the next lookup of a size re-prices just the stale rows and answers from the cheapest row's window.  Holds,
+ * expiries and releases are what change the free fragments, confirming a hold leaves them as they are.
+ *
+ * Ties between windows of the same cost go to the fragment the index orders first, the same window the greedy walk
+ * over the index picks.  Lookups of one size take turns, rows are marked stale in a concurrent set per size without
+ * taking any lock, so holds on different rows never wait on each other or on a lookup from under their row monitors.
+ */
+public class BestBlockCache {
+    //groups of up to this many seats are answered from the cache
+    public static final int MAX_GROUP_SIZE = 8;
+
+    private static final Comparator<Entry> CHEAPEST_WINDOW_FIRST = (e1, e2) -> {
+        int result = Double.compare(e1.window.getTotalSeatCost(), e2.window.getTotalSeatCost());
+        return result != 0 ? result : FreeFragmentIndex.LARGEST_THEN_CHEAPEST.compare(e1.source, e2.source);
+    };
+
+    private final FreeFragmentIndex index;
+    private final SizeCache[] bySize;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong rowsRepriced = new AtomicLong();
+
+    BestBlockCache(FreeFragmentIndex index) {
+        this.index = index;
+        this.bySize = new SizeCache[MAX_GROUP_SIZE];
+        for (int i = 0; i < MAX_GROUP_SIZE; i++) {
+            this.bySize[i] = new SizeCache(i + 1);
+        }
+    }
+
+    /* marks the row stale for every group size, called under the row's monitor whenever its fragments change */
+    void invalidate(int blockIndex) {
+        boolean newlyStale = false;
+        for (SizeCache sizeCache : this.bySize) {
+            newlyStale |= sizeCache.stale.add(blockIndex);
+        }
+        if (newlyStale) {
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param numSeats a group size from 1 up to MAX_GROUP_SIZE
+     * @return the cheapest window of that many contiguous seats, empty if no free fragment is large enough
+     * @throws IllegalArgumentException for a group size the cache does not keep
+     */
+    public Optional<SeatingFragment> cheapestBlock(int numSeats) throws IllegalArgumentException {
+        if (numSeats < 1 || numSeats > MAX_GROUP_SIZE) {
+            throw new IllegalArgumentException("group size not cached: " + numSeats);
+        }
+        this.lookups.incrementAndGet();
+        SizeCache sizeCache = this.bySize[numSeats - 1];
+        synchronized (sizeCache) {
+            if (sizeCache.stale.isEmpty()) {
+                this.hits.incrementAndGet();
+            } else {
+                int repriced = 0;
+                for (Integer row : sizeCache.stale) {
+                    //taken out before pricing, a row changing from here on is marked stale again for the next lookup
+                    if (sizeCache.stale.remove(row)) {
+                        sizeCache.reprice(row);
+                        repriced++;
+                    }
+                }
+                this.rowsRepriced.addAndGet(repriced);
+            }
+            return sizeCache.cheapestFirst.isEmpty()
+                    ? Optional.empty()
+                    : Optional.of(sizeCache.cheapestFirst.first().window);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(this.lookups.get(), this.hits.get(), this.invalidations.get(), this.rowsRepriced.get());
+    }
+
+    /* the cheapest window of one size in each row and across the rows, guarded by its own monitor */
+    private class SizeCache {
+        final int numSeats;
+        //rows changed since they were last priced
+        final Set<Integer> stale = ConcurrentHashMap.newKeySet();
+        final TreeSet<Entry> cheapestFirst = new TreeSet<Entry>(CHEAPEST_WINDOW_FIRST);
+        final List<SeatingFragment> rowFragments = new ArrayList<SeatingFragment>();
+        Entry[] byRow = new Entry[0];
+
+        SizeCache(int numSeats) {
+            this.numSeats = numSeats;
+        }
+
+        void reprice(int blockIndex) {
+            if (blockIndex >= this.byRow.length) {
+                this.byRow = Arrays.copyOf(this.byRow, Math.max(blockIndex + 1, this.byRow.length * 2));
+            }
+            if (this.byRow[blockIndex] != null) {
+                this.cheapestFirst.remove(this.byRow[blockIndex]);
+                this.byRow[blockIndex] = null;
+            }
+            this.rowFragments.clear();
+            BestBlockCache.this.index.addRowTo(blockIndex, this.rowFragments);
+            Entry best = null;
+            for (SeatingFragment fragment : this.rowFragments) {
+                if (fragment.getSize() >= this.numSeats) {
+                    Entry candidate = new Entry(fragment, fragment.bestBlockFromFragment(this.numSeats).get());
+                    if (best == null || CHEAPEST_WINDOW_FIRST.compare(candidate, best) < 0) {
+                        best = candidate;
+                    }
+                }
+            }
+            if (best != null) {
+                this.byRow[blockIndex] = best;
+                this.cheapestFirst.add(best);
+            }
+        }
+    }
+
+    /* the cheapest window of a row and the free fragment it lies in */
+    private static class Entry {
+        final SeatingFragment source;
+        final SeatingFragment window;
+
+        Entry(SeatingFragment source, SeatingFragment window) {
+            this.source = source;
+            this.window = window;
+        }
+    }
+
+    /* the cache's counters at one point in time */
+    public static class Stats {
+        private final long lookups;
+        private final long hits;
+        private final long invalidations;
+        private final long rowsRepriced;
+
+        public Stats(long lookups, long hits, long invalidations, long rowsRepriced) {
+            this.lookups = lookups;
+            this.hits = hits;
+            this.invalidations = invalidations;
+            this.rowsRepriced = rowsRepriced;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        /* lookups answered without pricing any row again */
+        public long getHits() {
+            return hits;
+        }
+
+        public double getHitRate() {
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        /* changes to a row's free fragments that made it stale */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getRowsRepriced() {
+            return rowsRepriced;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "lookups=" + lookups +
+                    ", hits=" + hits +
+                    ", invalidations=" + invalidations +
+                    ", rowsRepriced=" + rowsRepriced +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.rcg.walmart.seating;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The free seating fragments of an event ordered largest first and, within a size, cheapest first.  This is the
+ * order the seat search walks them in, so the largest block, the cheapest block of a size and every block able to
+ * seat a group are navigations of the set rather than scans over all of the fragments.
+ *
+ * The same fragments are also kept per row addressed by their start index, which is what carving a hold out of a
+ * free fragment and coalescing a released fragment with its free neighbors need.  Rows live in a table indexed by
+ * block index, and a row keeps no more than its one free fragment until a hold splits it.
+ *
+ * The index is safe to share between threads.  Searches walk the size ordering without taking any lock and may see
+ * fragments that are being carved or merged at that moment, which is fine as long as the seats are claimed through
+ * SeatOccupancy before they are carved.  Changes to a row happen under that row's monitor, so holds and releases on
+ * different rows never wait on each other.
+ */
+public class FreeFragmentIndex implements AvailableFragments {
+    //the order searches walk the fragments in, equally priced windows go to the fragment coming first
+    public static final Comparator<SeatingFragment> LARGEST_THEN_CHEAPEST = (sf1, sf2) -> {
+        int result = Integer.compare(sf2.getSize(), sf1.getSize());
+        if (result == 0) {
+            result = Double.compare(sf1.getTotalSeatCost(), sf2.getTotalSeatCost());
+        }
+        if (result == 0) {
+            result = Integer.compare(sf1.getBlockIndex(), sf2.getBlockIndex());
+        }
+        if (result == 0) {
+            result = Integer.compare(sf1.getStartIndex(), sf2.getStartIndex());
+        }
+        return result;
+    };
+
+    private final NavigableSet<SeatingFragment> bySize;
+    //the skip list's size() walks the whole set, count fragments separately
+    private final AtomicInteger numFragments;
+    private volatile RowFragments[] byRow;
+    //the cheapest block of each common group size, marked stale row by row as fragments come and go
+    private final BestBlockCache bestBlocks = new BestBlockCache(this);
+
+    public FreeFragmentIndex() {
+        this.bySize = new ConcurrentSkipListSet<SeatingFragment>(LARGEST_THEN_CHEAPEST);
+        this.numFragments = new AtomicInteger();
+        this.byRow = new RowFragments[0];
+    }
+
+    public FreeFragmentIndex(Collection<SeatingFragment> availableSeatingFragments) {
+        this();
+        for (SeatingFragment fragment : availableSeatingFragments) {
+            add(fragment);
+        }
+    }
+
+    public void add(SeatingFragment fragment) throws IllegalArgumentException {
+        RowFragments row = rowFor(fragment);
+        synchronized (row) {
+            row.put(fragment);
+            this.bySize.add(fragment);
+            this.numFragments.incrementAndGet();
+            this.bestBlocks.invalidate(fragment.getBlockIndex());
+        }
+    }
+
+    public boolean remove(SeatingFragment fragment) {
+        RowFragments row = row(fragment.getBlockIndex());
+        if (row == null) {
+            return false;
+        }
+        synchronized (row) {
+            if (!row.remove(fragment)) {
+                return false;
+            }
+            this.bySize.remove(fragment);
+            this.numFragments.decrementAndGet();
+            this.bestBlocks.invalidate(fragment.getBlockIndex());
+            return true;
+        }
+    }
+
+    private RowFragments row(int blockIndex) {
+        RowFragments[] rows = this.byRow;
+        return blockIndex < 0 || blockIndex >= rows.length ? null : rows[blockIndex];
+    }
+
+    private RowFragments rowFor(SeatingFragment fragment) throws IllegalArgumentException {
+        int blockIndex = fragment.getBlockIndex();
+        if (blockIndex < 0) {
+            throw new IllegalArgumentException("negative block index: " + fragment);
+        }
+        RowFragments row = row(blockIndex);
+        if (row != null) {
+            return row;
+        }
+        synchronized (this) {
+            RowFragments[] rows = this.byRow;
+            if (blockIndex >= rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(blockIndex + 1, rows.length * 2));
+            }
+            if (rows[blockIndex] == null) {
+                rows[blockIndex] = new RowFragments();
+            }
+            this.byRow = rows;
+            return rows[blockIndex];
+        }
+    }
+
+    /* the free fragment the requested seats lie in, if they are all free */
+    public Optional<SeatingFragment> containing(SeatingFragment requested) {
+        RowFragments row = row(requested.getBlockIndex());
+        if (row == null) {
+            return Optional.empty();
+        }
+        synchronized (row) {
+            SeatingFragment candidate = row.startingAtOrBefore(requested.getStartIndex());
+            if (candidate == null || !candidate.containsAnother(requested)) {
+                return Optional.empty();
+            }
+            return Optional.of(candidate);
+        }
+    }
+
+    /* whether the seat with the given packed seat id is free */
+    public boolean isFree(long seatId) {
+        RowFragments row = row(Seat.blockNumberOf(seatId));
+        if (row == null) {
+            return false;
+        }
+        synchronized (row) {
+            SeatingFragment candidate = row.startingAtOrBefore(Seat.seatNumberOf(seatId));
+            return candidate != null && candidate.getEndIndex() >= Seat.seatNumberOf(seatId);
+        }
+    }
+
+    /**
+     * Takes the requested seats out of the free fragment holding them, leaving whatever remains of that fragment free.
+     *
+     * @return the requested seats as a fragment of the venue row, empty if any of them are not free
+     */
+    public Optional<SeatingFragment> carve(SeatingFragment requested) {
+        RowFragments row = row(requested.getBlockIndex());
+        if (row == null) {
+            return Optional.empty();
+        }
+        synchronized (row) {
+            Optional<SeatingFragment> sourceBlock = containing(requested);
+            if (!sourceBlock.isPresent()) {
+                return Optional.empty();
+            }
+            remove(sourceBlock.get());
+            sourceBlock.get().minusAnother(requested).get().forEach(this::add);
+            //re-anchor the request on the venue row the source block shares so splits and merges stay O(1)
+            return Optional.of(sourceBlock.get().subFragment(requested.getStartIndex(), requested.getEndIndex()));
+        }
+    }
+
+    /**
+     * Returns seats to the free pool, coalescing them with the free fragments immediately before and after.
+     *
+     * @return the free fragment the seats ended up in
+     */
+    public SeatingFragment release(SeatingFragment released) {
+        RowFragments row = rowFor(released);
+        synchronized (row) {
+            SeatingFragment addThisBackToAvailable = released;
+            SeatingFragment before = row.startingAtOrBefore(released.getStartIndex() - 1);
+            if (before != null && before.getEndIndex() + 1 == released.getStartIndex()) {
+                remove(before);
+                addThisBackToAvailable = addThisBackToAvailable.mergeWithBlock(before);
+            }
+            SeatingFragment after = row.startingAt(released.getEndIndex() + 1);
+            if (after != null) {
+                remove(after);
+                addThisBackToAvailable = addThisBackToAvailable.mergeWithBlock(after);
+            }
+            add(addThisBackToAvailable);
+            return addThisBackToAvailable;
+        }
+    }
+
+    public int size() {
+        return this.numFragments.get();
+    }
+
+    public boolean isEmpty() {
+        return this.bySize.isEmpty();
+    }
+
+    /* the largest free fragment, the cheapest one when several share the largest size */
+    public Optional<SeatingFragment> largest() {
+        Iterator<SeatingFragment> largestFirst = this.bySize.iterator();
+        return largestFirst.hasNext() ? Optional.of(largestFirst.next()) : Optional.empty();
+    }
+
+    /* the smallest free fragment holding at least numSeats seats, the cheapest one when several share that size */
+    public Optional<SeatingFragment> smallestAtLeast(int numSeats) {
+        SeatingFragment smallest = this.bySize.lower(SeatingFragment.sizeProbe(numSeats - 1));
+        if (smallest == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(this.bySize.ceiling(SeatingFragment.sizeProbe(smallest.getSize())));
+    }
+
+    @Override
+    public NavigableSet<SeatingFragment> atLeast(int numSeats) {
+        return Collections.unmodifiableNavigableSet(this.bySize.headSet(SeatingFragment.sizeProbe(numSeats - 1), false));
+    }
+
+    /* all free fragments by row, then by position in the row */
+    public List<SeatingFragment> inRowOrder() {
+        List<SeatingFragment> fragments = new ArrayList<SeatingFragment>(size());
+        for (RowFragments row : this.byRow) {
+            if (row != null) {
+                synchronized (row) {
+                    row.addTo(fragments);
+                }
+            }
+        }
+        return fragments;
+    }
+
+    /* the free fragments of one row by position */
+    void addRowTo(int blockIndex, List<SeatingFragment> fragments) {
+        RowFragments row = row(blockIndex);
+        if (row != null) {
+            synchronized (row) {
+                row.addTo(fragments);
+            }
+        }
+    }
+
+    /* the cheapest block for each group size up to BestBlockCache.MAX_GROUP_SIZE */
+    public BestBlockCache bestBlocks() {
+        return this.bestBlocks;
+    }
+
+    @Override
+    public NavigableSet<SeatingFragment> largestFirst() {
+        return Collections.unmodifiableNavigableSet(this.bySize);
+    }
+
+    /* answered from the BestBlockCache for the group sizes it keeps, by a walk over the fragments for larger ones */
+    @Override
+    public Optional<SeatingFragment> cheapestBlock(int numSeats) {
+        if (numSeats <= BestBlockCache.MAX_GROUP_SIZE) {
+            return this.bestBlocks.cheapestBlock(numSeats);
+        }
+        SeatingFragment best = null;
+        for (SeatingFragment fragment : atLeast(numSeats)) {
+            SeatingFragment window = fragment.bestBlockFromFragment(numSeats).get();
+            if (best == null || window.getTotalSeatCost() < best.getTotalSeatCost()) {
+                best = window;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+}
@@ -0,0 +1,108 @@
+package com.rcg.walmart.seating;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The free fragments of a single row addressed by their start seat number.  A row nobody has held seats in has one
+ * free fragment and keeps just that, the arrays of fragments by start seat are only created once a hold splits the row,
+ * so an event on a large venue pays for it in proportion to the rows its holds touch.  A split row keeps the start
+ * seats in a sorted int array beside the fragments, so finding a fragment is a binary search that never boxes a seat
+ * number.
+ */
+class RowFragments {
+    private static final int INITIAL_CAPACITY = 4;
+
+    //the row's fragment while it has at most one, null once the row has been split
+    private SeatingFragment only;
+    //once split, the start seats in ascending order and the fragment starting at each, the first size entries are used
+    private int[] starts;
+    private SeatingFragment[] fragments;
+    private int size;
+
+    void put(SeatingFragment fragment) {
+        if (this.starts == null) {
+            if (this.only == null) {
+                this.only = fragment;
+                return;
+            }
+            this.starts = new int[INITIAL_CAPACITY];
+            this.fragments = new SeatingFragment[INITIAL_CAPACITY];
+            this.starts[0] = this.only.getStartIndex();
+            this.fragments[0] = this.only;
+            this.size = 1;
+            this.only = null;
+        }
+        int position = Arrays.binarySearch(this.starts, 0, this.size, fragment.getStartIndex());
+        if (position >= 0) {
+            this.fragments[position] = fragment;
+            return;
+        }
+        int insertAt = -position - 1;
+        if (this.size == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, this.size * 2);
+            this.fragments = Arrays.copyOf(this.fragments, this.size * 2);
+        }
+        System.arraycopy(this.starts, insertAt, this.starts, insertAt + 1, this.size - insertAt);
+        System.arraycopy(this.fragments, insertAt, this.fragments, insertAt + 1, this.size - insertAt);
+        this.starts[insertAt] = fragment.getStartIndex();
+        this.fragments[insertAt] = fragment;
+        this.size++;
+    }
+
+    boolean remove(SeatingFragment fragment) {
+        if (this.starts == null) {
+            if (this.only != fragment) {
+                return false;
+            }
+            this.only = null;
+            return true;
+        }
+        int position = Arrays.binarySearch(this.starts, 0, this.size, fragment.getStartIndex());
+        if (position < 0 || this.fragments[position] != fragment) {
+            return false;
+        }
+        System.arraycopy(this.starts, position + 1, this.starts, position, this.size - position - 1);
+        System.arraycopy(this.fragments, position + 1, this.fragments, position, this.size - position - 1);
+        this.size--;
+        this.fragments[this.size] = null;
+        return true;
+    }
+
+    /* the fragment starting at the given seat, null if there is none */
+    SeatingFragment startingAt(int seatNumber) {
+        if (this.starts == null) {
+            return this.only != null && this.only.getStartIndex() == seatNumber ? this.only : null;
+        }
+        int position = Arrays.binarySearch(this.starts, 0, this.size, seatNumber);
+        return position >= 0 ? this.fragments[position] : null;
+    }
+
+    /* the fragment with the greatest start seat at or before the given seat, null if there is none */
+    SeatingFragment startingAtOrBefore(int seatNumber) {
+        if (this.starts == null) {
+            return this.only != null && this.only.getStartIndex() <= seatNumber ? this.only : null;
+        }
+        int position = Arrays.binarySearch(this.starts, 0, this.size, seatNumber);
+        //not found gives minus the insertion point less one, the floor is just before the insertion point
+        int floor = position >= 0 ? position : -position - 2;
+        return floor >= 0 ? this.fragments[floor] : null;
+    }
+
+    void addTo(List<SeatingFragment> fragments) {
+        if (this.starts == null) {
+            if (this.only != null) {
+                fragments.add(this.only);
+            }
+        } else {
+            fragments.addAll(Arrays.asList(this.fragments).subList(0, this.size));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RowFragments{" +
+                "byStart=" + (this.starts == null ? this.only : Arrays.asList(this.fragments).subList(0, this.size)) +
+                '}';
+    }
+}
@@ -1,16 +1,35 @@
 package com.rcg.walmart.seating;
 
+/*
+ * A single seat.  Its location is packed into one long seat id, block number in the high word and seat number in the
+ * low word, so seats can be identified, compared and hashed without boxing either coordinate.
+ */
 public class Seat {
-    private int blockNumber;
-    private int seatNumber;
+    private long seatId;
     private double seatValue;
 
-    public Integer getBlockNumber() {
-        return this.blockNumber;
+    public static long seatId(int blockNumber, int seatNumber) {
+        return ((long) blockNumber << 32) | (seatNumber & 0xFFFFFFFFL);
     }
 
-    public Integer getSeatNumber() {
-        return this.seatNumber;
+    public static int blockNumberOf(long seatId) {
+        return (int) (seatId >> 32);
+    }
+
+    public static int seatNumberOf(long seatId) {
+        return (int) seatId;
+    }
+
+    public long getSeatId() {
+        return this.seatId;
+    }
+
+    public int getBlockNumber() {
+        return blockNumberOf(this.seatId);
+    }
+
+    public int getSeatNumber() {
+        return seatNumberOf(this.seatId);
     }
 
     public double getSeatValue() {
@@ -18,8 +37,21 @@ public class Seat {
     }
 
     public Seat(int blockNumber, int seatNumber, double seatValue) {
-        this.blockNumber = blockNumber;
-        this.seatNumber = seatNumber;
+        this.seatId = seatId(blockNumber, seatNumber);
         this.seatValue = seatValue;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Seat seat = (Seat) o;
+        return seatId == seat.seatId &&
+                Double.compare(seat.seatValue, seatValue) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(seatId) + Double.hashCode(seatValue);
+    }
 }
@@ -0,0 +1,168 @@
+package com.rcg.walmart.seating;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Which seats of an event are taken, one bit per seat in an atomic bitset per row.  A hold is committed by claiming
+ * its seat ranges with compare-and-set on the words they span, so two holds only ever contend when they actually want
+ * the same seats and holds on different rows never touch the same memory.
+ *
+ * The bitset of a row is only allocated once a seat of the row is taken, so an event on a large venue costs memory in
+ * proportion to the rows its holds touch rather than to its number of seats.
+ */
+public class SeatOccupancy {
+    private final int[] firstSeatNumbers;
+    //null for a row none of whose seats has been taken yet
+    private final AtomicReferenceArray<AtomicLongArray> rows;
+    private final int[] lengths;
+
+    /**
+     * @param freeFragments the seats that start out free
+     * @param rowsToCover   fragments whose whole rows are tracked, any seat of them not in freeFragments starts out
+     *                      taken
+     */
+    public SeatOccupancy(Collection<SeatingFragment> freeFragments, Collection<SeatingFragment> rowsToCover) {
+        int numBlocks = 0;
+        for (SeatingFragment fragment : rowsToCover) {
+            numBlocks = Math.max(numBlocks, fragment.getBlockIndex() + 1);
+        }
+        this.firstSeatNumbers = new int[numBlocks];
+        this.lengths = new int[numBlocks];
+        int[] lastSeatNumbers = new int[numBlocks];
+        for (SeatingFragment fragment : rowsToCover) {
+            int blockIndex = fragment.getBlockIndex();
+            SeatingRow row = fragment.row();
+            if (this.lengths[blockIndex] == 0) {
+                this.firstSeatNumbers[blockIndex] = row.getFirstSeatNumber();
+                lastSeatNumbers[blockIndex] = row.getLastSeatNumber();
+            } else {
+                this.firstSeatNumbers[blockIndex] = Math.min(this.firstSeatNumbers[blockIndex], row.getFirstSeatNumber());
+                lastSeatNumbers[blockIndex] = Math.max(lastSeatNumbers[blockIndex], row.getLastSeatNumber());
+            }
+            this.lengths[blockIndex] = lastSeatNumbers[blockIndex] - this.firstSeatNumbers[blockIndex] + 1;
+        }
+        this.rows = new AtomicReferenceArray<AtomicLongArray>(numBlocks);
+        int[] freeSeats = new int[numBlocks];
+        for (SeatingFragment fragment : freeFragments) {
+            if (covers(fragment.getBlockIndex(), fragment.getStartIndex(), fragment.getEndIndex())) {
+                freeSeats[fragment.getBlockIndex()] += fragment.getSize();
+            }
+        }
+        for (int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            //rows starting out all free are left to the first claim
+            if (this.lengths[blockIndex] > 0 && freeSeats[blockIndex] < this.lengths[blockIndex]) {
+                setBits(blockIndex, 0, this.lengths[blockIndex] - 1, true);
+            }
+        }
+        for (SeatingFragment fragment : freeFragments) {
+            release(fragment);
+        }
+    }
+
+    /* claims every seat of the fragment, or none of them when any is already taken */
+    public boolean claim(SeatingFragment fragment) {
+        int blockIndex = fragment.getBlockIndex();
+        if (!covers(blockIndex, fragment.getStartIndex(), fragment.getEndIndex())) {
+            return false;
+        }
+        int first = fragment.getStartIndex() - this.firstSeatNumbers[blockIndex];
+        int last = fragment.getEndIndex() - this.firstSeatNumbers[blockIndex];
+        AtomicLongArray words = words(blockIndex);
+        for (int word = first >>> 6; word <= last >>> 6; word++) {
+            long mask = wordMask(word, first, last);
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    //conflict, give back the words claimed so far
+                    if (word > first >>> 6) {
+                        setBits(blockIndex, first, (word << 6) - 1, false);
+                    }
+                    return false;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+        return true;
+    }
+
+    /* claims every seat of every fragment, or none of them when any is already taken */
+    public boolean claimAll(List<SeatingFragment> fragments) {
+        for (int i = 0; i < fragments.size(); i++) {
+            if (!claim(fragments.get(i))) {
+                for (int j = 0; j < i; j++) {
+                    release(fragments.get(j));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void release(SeatingFragment fragment) {
+        int blockIndex = fragment.getBlockIndex();
+        if (covers(blockIndex, fragment.getStartIndex(), fragment.getEndIndex()) && this.rows.get(blockIndex) != null) {
+            setBits(blockIndex, fragment.getStartIndex() - this.firstSeatNumbers[blockIndex],
+                    fragment.getEndIndex() - this.firstSeatNumbers[blockIndex], false);
+        }
+    }
+
+    public boolean isTaken(long seatId) {
+        int blockIndex = Seat.blockNumberOf(seatId);
+        int seatNumber = Seat.seatNumberOf(seatId);
+        if (!covers(blockIndex, seatNumber, seatNumber)) {
+            return true;
+        }
+        int offset = seatNumber - this.firstSeatNumbers[blockIndex];
+        AtomicLongArray words = this.rows.get(blockIndex);
+        return words != null && (words.get(offset >>> 6) & (1L << offset)) != 0;
+    }
+
+    /* the number of rows a bitset has been allocated for */
+    public int allocatedRows() {
+        int allocated = 0;
+        for (int blockIndex = 0; blockIndex < this.rows.length(); blockIndex++) {
+            if (this.rows.get(blockIndex) != null) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    //the row's bitset, allocated all free when the row has none yet
+    private AtomicLongArray words(int blockIndex) {
+        AtomicLongArray words = this.rows.get(blockIndex);
+        if (words == null) {
+            this.rows.compareAndSet(blockIndex, null, new AtomicLongArray((this.lengths[blockIndex] + 63) >>> 6));
+            words = this.rows.get(blockIndex);
+        }
+        return words;
+    }
+
+    private boolean covers(int blockIndex, int startSeatNumber, int endSeatNumber) {
+        return blockIndex >= 0 && blockIndex < this.lengths.length && this.lengths[blockIndex] > 0
+                && startSeatNumber >= this.firstSeatNumbers[blockIndex]
+                && endSeatNumber < this.firstSeatNumbers[blockIndex] + this.lengths[blockIndex];
+    }
+
+    private void setBits(int blockIndex, int first, int last, boolean taken) {
+        AtomicLongArray words = words(blockIndex);
+        for (int word = first >>> 6; word <= last >>> 6; word++) {
+            long mask = wordMask(word, first, last);
+            if (taken) {
+                words.getAndUpdate(word, current -> current | mask);
+            } else {
+                words.getAndUpdate(word, current -> current & ~mask);
+            }
+        }
+    }
+
+    //the bits of the given word that fall within the offsets first..last of the row
+    private static long wordMask(int word, int first, int last) {
+        int from = Math.max(first, word << 6) & 63;
+        int to = Math.min(last, (word << 6) + 63) & 63;
+        return (-1L >>> (63 - to)) & (-1L << from);
+    }
+}
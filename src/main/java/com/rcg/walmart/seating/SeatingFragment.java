@@ -1,46 +1,70 @@
 package com.rcg.walmart.seating;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.Optional;
 
+/*
+ * A block of contiguous seats described as a range over a shared, immutable SeatingRow.  The fragment itself holds
+ * nothing but the row reference and the inclusive seat number range, so splitting and merging is constant time.
+ */
 public class SeatingFragment {
-    private List<Seat> contiguousSeats;
-    private int blockIndex;
-    private int startIndex;
-    private int endIndex;
-    private double totalSeatCost;
+    private final SeatingRow row;
+    private final int startIndex;
+    private final int endIndex;
+    private final double totalSeatCost;
+
+    public SeatingFragment(SeatingRow row, int startIndex, int endIndex) throws IllegalArgumentException {
+        if (startIndex > endIndex) {
+            throw new IllegalArgumentException("empty seat range: " + startIndex + " -> " + endIndex);
+        }
+        if (!row.containsSeat(startIndex) || !row.containsSeat(endIndex)) {
+            throw new IllegalArgumentException("seat range " + startIndex + " -> " + endIndex + " is outside of " + row);
+        }
+        this.row = row;
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+        this.totalSeatCost = row.rangeCost(startIndex, endIndex);
+    }
+
+    private SeatingFragment(int size, double totalSeatCost) {
+        this.row = null;
+        this.startIndex = 0;
+        this.endIndex = size - 1;
+        this.totalSeatCost = totalSeatCost;
+    }
+
+    /* a search key sorting ahead of every real fragment of the given size in a FreeFragmentIndex */
+    static SeatingFragment sizeProbe(int size) {
+        return new SeatingFragment(size, Double.NEGATIVE_INFINITY);
+    }
 
     public SeatingFragment(List<Seat> contiguousSeats) throws IllegalArgumentException {
+        this(validatedRow(contiguousSeats), contiguousSeats.get(0).getSeatNumber(),
+                contiguousSeats.get(contiguousSeats.size() - 1).getSeatNumber());
+    }
+
+    private static SeatingRow validatedRow(List<Seat> contiguousSeats) throws IllegalArgumentException {
         if (contiguousSeats.size() == 0) {
             throw new IllegalArgumentException("empty seat list");
         }
-        //sanity check block identifiers
-        List<Integer> blockIdentifiers = contiguousSeats.stream().map(Seat::getBlockNumber).distinct().collect(Collectors.toList());
-        if (blockIdentifiers.size() > 1) {
-            throw new IllegalArgumentException("more than one block identifier found");
-        }
-
+        int blockIndex = contiguousSeats.get(0).getBlockNumber();
         int currIndex = contiguousSeats.get(0).getSeatNumber();
-        this.totalSeatCost = contiguousSeats.get(0).getSeatValue();
         for (int i = 1; i < contiguousSeats.size(); i++) {
-            this.totalSeatCost += contiguousSeats.get(i).getSeatValue();
+            //sanity check block identifiers
+            if (contiguousSeats.get(i).getBlockNumber() != blockIndex) {
+                throw new IllegalArgumentException("more than one block identifier found");
+            }
             int nextIndex = contiguousSeats.get(i).getSeatNumber();
             if (nextIndex - currIndex != 1) {
                 throw new IllegalArgumentException("indexes are not contiguous, went from: " + currIndex + " -> " + nextIndex);
             }
             currIndex = nextIndex;
         }
-        this.contiguousSeats = contiguousSeats;
-        this.startIndex = contiguousSeats.get(0).getSeatNumber();
-        this.endIndex = contiguousSeats.get(contiguousSeats.size() - 1).getSeatNumber();
-        this.blockIndex = contiguousSeats.get(0).getBlockNumber();
-        //a little work up front makes comparison/containment/contiguous tests much easier to reason about and saves on traversals.
+        return SeatingRow.fromSeats(contiguousSeats);
     }
 
     public boolean contiguousWith(SeatingFragment anotherFragment) {
-        if (this.blockIndex == anotherFragment.getBlockIndex()) {
+        if (this.getBlockIndex() == anotherFragment.getBlockIndex()) {
             return (this.endIndex + 1 == anotherFragment.getStartIndex()) ||
                     (anotherFragment.getEndIndex() + 1 == this.startIndex);
         } else {
@@ -49,35 +73,35 @@ public class SeatingFragment {
     }
 
     public boolean containsAnother(SeatingFragment anotherFragment) {
-        return this.blockIndex == anotherFragment.getBlockIndex() &&
+        return this.getBlockIndex() == anotherFragment.getBlockIndex() &&
                 this.startIndex <= anotherFragment.getStartIndex() &&
                 this.endIndex >= anotherFragment.getEndIndex();
     }
 
+    /* the same seats as a fragment of this fragment's row, the requested range must lie inside this fragment */
+    public SeatingFragment subFragment(int startIndex, int endIndex) throws IllegalArgumentException {
+        if (startIndex < this.startIndex || endIndex > this.endIndex) {
+            throw new IllegalArgumentException("seat range " + startIndex + " -> " + endIndex + " is outside of " + this);
+        }
+        if (startIndex == this.startIndex && endIndex == this.endIndex) {
+            return this;
+        }
+        return new SeatingFragment(this.row, startIndex, endIndex);
+    }
+
     public Optional<List<SeatingFragment>> minusAnother(SeatingFragment anotherFragment) {
         if (this.containsAnother(anotherFragment)) {
-            ArrayList<SeatingFragment> result = new ArrayList<SeatingFragment>();
             if (this.startIndex == anotherFragment.startIndex && this.endIndex == anotherFragment.endIndex) {
                 //full block == no seating fragment after removal of the sub fragment
                 return Optional.of(Collections.emptyList());
             }
-            List<List<Seat>> blocksToCreateFragmentsFrom = new ArrayList<List<Seat>>();
-            List<Seat> anotherFragmentsSeats = anotherFragment.getSeats();
-            int startIndexSubFragment = this.getSeats().indexOf(anotherFragmentsSeats.get(0));
-            int endIndexSubFragment = this.getSeats().indexOf(anotherFragmentsSeats.get(anotherFragmentsSeats.size()-1));
-            if (startIndexSubFragment != 0) {
-                blocksToCreateFragmentsFrom.add(new ArrayList<Seat>(this.getSeats().subList(0, startIndexSubFragment)));
+            ArrayList<SeatingFragment> result = new ArrayList<SeatingFragment>(2);
+            if (anotherFragment.startIndex != this.startIndex) {
+                result.add(new SeatingFragment(this.row, this.startIndex, anotherFragment.startIndex - 1));
             }
-            if (endIndexSubFragment != this.getSeats().size()-1) {
-                blocksToCreateFragmentsFrom.add(new ArrayList<Seat>(this.getSeats().subList(endIndexSubFragment+1, this.getSeats().size())));
+            if (anotherFragment.endIndex != this.endIndex) {
+                result.add(new SeatingFragment(this.row, anotherFragment.endIndex + 1, this.endIndex));
             }
-            for (List<Seat> seatBlock : blocksToCreateFragmentsFrom) {
-                result.add(new SeatingFragment(seatBlock));
-            }
-
-//            List<Seat> remainingSeats = new ArrayList(this.getSeats());
-//            remainingSeats.removeAll(anotherFragment.getSeats());
-//            result.add(new SeatingFragment(remainingSeats));
             return Optional.of(result);
         } else {
             return Optional.empty();
@@ -88,21 +112,18 @@ public class SeatingFragment {
         if (this.contiguousWith(anotherFragment) == false) {
             throw new IllegalArgumentException("blocks are not contiguous");
         }
-        Stream<Seat> s1 = this.contiguousSeats.stream();
-        Stream<Seat> s2 = anotherFragment.contiguousSeats.stream();
-        Stream<Seat> combined = Stream.concat(s1, s2);
-        List<Seat> combinedSeats = combined.collect(Collectors.toList());
-        Collections.sort(combinedSeats, new Comparator<Seat>() {
-            @Override
-            public int compare(Seat s1, Seat s2) {
-                return s1.getSeatNumber().compareTo(s2.getSeatNumber());
-            }
-        });
-        return new SeatingFragment(combinedSeats);
-    }
-
-    private double seatValue(List<Seat> seats) {
-        return seats.stream().map(Seat::getSeatValue).reduce(0.0, (v1, v2) -> v1 + v2);
+        int mergedStart = Math.min(this.startIndex, anotherFragment.startIndex);
+        int mergedEnd = Math.max(this.endIndex, anotherFragment.endIndex);
+        if (this.row == anotherFragment.row) {
+            return new SeatingFragment(this.row, mergedStart, mergedEnd);
+        }
+        //fragments built from separate seat lists do not share a row, stitch their costs together once
+        double[] mergedCosts = new double[mergedEnd - mergedStart + 1];
+        for (int seatNumber = mergedStart; seatNumber <= mergedEnd; seatNumber++) {
+            SeatingFragment owner = this.containsSeat(seatNumber) ? this : anotherFragment;
+            mergedCosts[seatNumber - mergedStart] = owner.row.getSeatCost(seatNumber);
+        }
+        return new SeatingRow(getBlockIndex(), mergedStart, mergedCosts).asFragment();
     }
 
     public Optional<SeatingFragment> bestBlockFromFragment(int numSeats) {
@@ -111,31 +132,33 @@ public class SeatingFragment {
             return Optional.empty();
         } else if (getSize() == numSeats) {
             //one option, full fragment
-            return Optional.of(new SeatingFragment(this.getSeats()));
+            return Optional.of(this);
         } else {
-            int s = 0;
-            double bestValue = seatValue(getSeats().subList(s,s+numSeats));
-            for(int i = 0 ; i <= getSize() - numSeats ; i++) {
-                double currValue = seatValue(getSeats().subList(i, i+numSeats));
-                if (currValue <= bestValue) {
-                    bestValue = currValue;
-                    s = i;
-                }
-            }
-            return Optional.of(new SeatingFragment(getSeats().subList(s,s+numSeats)));
+            int s = this.row.bestWindowStart(this.startIndex, this.endIndex, numSeats);
+            return Optional.of(new SeatingFragment(this.row, s, s + numSeats - 1));
         }
     }
 
+    /* the row of seat costs the fragment was carved out of */
+    public SeatingRow row() {
+        return this.row;
+    }
+
     public double getTotalSeatCost() {
         return this.totalSeatCost;
     }
 
+    /* materializes the seats of the fragment, intended for display and tickets rather than seat searches */
     public List<Seat> getSeats() {
-        return this.contiguousSeats;
+        List<Seat> seats = new ArrayList<Seat>(getSize());
+        for (int seatNumber = this.startIndex; seatNumber <= this.endIndex; seatNumber++) {
+            seats.add(new Seat(getBlockIndex(), seatNumber, this.row.getSeatCost(seatNumber)));
+        }
+        return seats;
     }
 
     public int getBlockIndex() {
-        return this.blockIndex;
+        return this.row == null ? Integer.MIN_VALUE : this.row.getBlockIndex();
     }
 
     public int getStartIndex() {
@@ -147,20 +170,29 @@ public class SeatingFragment {
     }
 
     public int getSize() {
-        return this.contiguousSeats.size();
+        return this.endIndex - this.startIndex + 1;
+    }
+
+    private boolean containsSeat(int seatNumber) {
+        return seatNumber >= this.startIndex && seatNumber <= this.endIndex;
     }
 
     public Optional<Double> getSeatValue(int blockIndex, int seatIndex) {
-        if (this.blockIndex != blockIndex) { return Optional.empty(); }
+        OptionalDouble seatCost = getSeatCost(Seat.seatId(blockIndex, seatIndex));
+        return seatCost.isPresent() ? Optional.of(seatCost.getAsDouble()) : Optional.empty();
+    }
+
+    public OptionalDouble getSeatCost(long seatId) {
+        if (getBlockIndex() != Seat.blockNumberOf(seatId) || !containsSeat(Seat.seatNumberOf(seatId))) { return OptionalDouble.empty(); }
         else {
-            return this.contiguousSeats.stream().filter( s -> s.getSeatNumber() == seatIndex).findFirst().map(s -> s.getSeatValue());
+            return OptionalDouble.of(this.row.getSeatCost(Seat.seatNumberOf(seatId)));
         }
     }
 
     @Override
     public String toString() {
         return "SeatingFragment{" +
-                "blockIndex=" + blockIndex +
+                "blockIndex=" + getBlockIndex() +
                 ", startIndex=" + startIndex +
                 ", endIndex=" + endIndex +
                 '}';
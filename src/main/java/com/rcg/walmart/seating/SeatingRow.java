@@ -0,0 +1,103 @@
+package com.rcg.walmart.seating;
+
+import java.util.List;
+
+/*
+ * An immutable row of seat costs produced by a Venue.  Every SeatingFragment carved out of the row shares this
+ * instance, so splitting and merging fragments only ever moves a pair of indexes around.  Prefix sums of the seat
+ * costs are computed once when the row is built, which makes the cost of any range of seats a single subtraction.
+ */
+public class SeatingRow {
+    private final int blockIndex;
+    private final int firstSeatNumber;
+    private final double[] seatCosts;
+    //prefixCosts[i] is the cost of the first i seats of the row, prefixCosts[0] == 0
+    private final double[] prefixCosts;
+
+    public SeatingRow(int blockIndex, int firstSeatNumber, double[] seatCosts) throws IllegalArgumentException {
+        if (seatCosts.length == 0) {
+            throw new IllegalArgumentException("empty seat row");
+        }
+        this.blockIndex = blockIndex;
+        this.firstSeatNumber = firstSeatNumber;
+        this.seatCosts = seatCosts.clone();
+        this.prefixCosts = new double[seatCosts.length + 1];
+        for (int i = 0; i < seatCosts.length; i++) {
+            this.prefixCosts[i + 1] = this.prefixCosts[i] + seatCosts[i];
+        }
+    }
+
+    static SeatingRow fromSeats(List<Seat> contiguousSeats) {
+        double[] costs = new double[contiguousSeats.size()];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = contiguousSeats.get(i).getSeatValue();
+        }
+        return new SeatingRow(contiguousSeats.get(0).getBlockNumber(), contiguousSeats.get(0).getSeatNumber(), costs);
+    }
+
+    public int getBlockIndex() {
+        return this.blockIndex;
+    }
+
+    public int getFirstSeatNumber() {
+        return this.firstSeatNumber;
+    }
+
+    public int getLastSeatNumber() {
+        return this.firstSeatNumber + this.seatCosts.length - 1;
+    }
+
+    public int getLength() {
+        return this.seatCosts.length;
+    }
+
+    public boolean containsSeat(int seatNumber) {
+        return seatNumber >= this.firstSeatNumber && seatNumber <= getLastSeatNumber();
+    }
+
+    public double getSeatCost(int seatNumber) {
+        return this.seatCosts[seatNumber - this.firstSeatNumber];
+    }
+
+    public double rangeCost(int startSeatNumber, int endSeatNumber) {
+        return this.prefixCosts[endSeatNumber - this.firstSeatNumber + 1] - this.prefixCosts[startSeatNumber - this.firstSeatNumber];
+    }
+
+    /**
+     * Slides a window of numSeats seats across the given range of the row and finds the cheapest one.  Every window
+     * is priced from the prefix sums, so the whole search is linear in the length of the range.  On ties the window
+     * furthest along the row wins, matching the original seat by seat search.
+     *
+     * @return the first seat number of the cheapest window, or -1 when the range is shorter than numSeats
+     */
+    public int bestWindowStart(int startSeatNumber, int endSeatNumber, int numSeats) {
+        int first = startSeatNumber - this.firstSeatNumber;
+        int last = endSeatNumber - this.firstSeatNumber - numSeats + 1;
+        if (numSeats <= 0 || last < first) {
+            return -1;
+        }
+        int best = first;
+        double bestValue = this.prefixCosts[first + numSeats] - this.prefixCosts[first];
+        for (int i = first + 1; i <= last; i++) {
+            double currValue = this.prefixCosts[i + numSeats] - this.prefixCosts[i];
+            if (currValue <= bestValue) {
+                bestValue = currValue;
+                best = i;
+            }
+        }
+        return best + this.firstSeatNumber;
+    }
+
+    public SeatingFragment asFragment() {
+        return new SeatingFragment(this, this.firstSeatNumber, getLastSeatNumber());
+    }
+
+    @Override
+    public String toString() {
+        return "SeatingRow{" +
+                "blockIndex=" + blockIndex +
+                ", firstSeatNumber=" + firstSeatNumber +
+                ", length=" + seatCosts.length +
+                '}';
+    }
+}
@@ -0,0 +1,169 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.seating.AvailableFragments;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Searches for the cheapest seats among the allocations using as few blocks as possible, within a time budget per
+ * request.  Splitting a group over blocks is a fragmentable bin packing problem, the greedy allocation gets the number
+ * of blocks right but takes the largest blocks whole, where taking part of each of them can seat the group better.
+ *
+ * The search starts out from the greedy answer and only ever replaces it with a cheaper one, so running out of time
+ * returns the best allocation found so far and a budget of zero is the greedy allocation.  It picks blocks largest
+ * fragment first and each block's size largest first, and cuts off every branch that can not beat the best so far even
+ * if its remaining seats cost as little as the cheapest seat left.
+ */
+public class BranchAndBoundSeatAllocation implements SeatAllocationStrategy {
+    //the largest fragments able to take part, further ones are left out to keep the setup cost of a search bounded
+    private static final int MAX_CANDIDATES = 1024;
+    private static final int NODES_BETWEEN_CLOCK_CHECKS = 64;
+    private static final double EPSILON = 1e-9;
+
+    private final SeatAllocationStrategy greedy;
+    private final long budgetNanos;
+
+    public BranchAndBoundSeatAllocation(Duration budget) {
+        this(budget, new GreedySeatAllocation());
+    }
+
+    /* searching on from the answer of the given greedy allocation, which may price its windows in parallel */
+    public BranchAndBoundSeatAllocation(Duration budget, GreedySeatAllocation greedy) {
+        this.budgetNanos = budget.toNanos();
+        this.greedy = greedy;
+    }
+
+    @Override
+    public Optional<List<SeatingFragment>> allocate(AvailableFragments available, int numSeats) {
+        long deadline = System.nanoTime() + this.budgetNanos;
+        Optional<List<SeatingFragment>> greedyBlocks = this.greedy.allocate(available, numSeats);
+        //a group seated in one block already has the cheapest window of every fragment able to seat it
+        if (!greedyBlocks.isPresent() || greedyBlocks.get().size() == 1 || this.budgetNanos <= 0) {
+            return greedyBlocks;
+        }
+        Search search = new Search(available, numSeats, greedyBlocks.get(), deadline);
+        search.run(0, search.numBlocks, numSeats, 0);
+        return Optional.of(search.bestBlocks());
+    }
+
+    /* one search, the candidate fragments snapshotted largest first as the index orders them */
+    private static class Search {
+        final SeatingFragment[] fragments;
+        //sizeSums[i] is the number of seats of the first i fragments
+        final int[] sizeSums;
+        //cheapestSeatFrom[i] is the cost of the cheapest seat in fragments i and on
+        final double[] cheapestSeatFrom;
+        final int numBlocks;
+        final long deadline;
+        final int[] chosenFragments;
+        final int[] chosenSizes;
+        final int[] bestFragments;
+        final int[] bestSizes;
+        final List<SeatingFragment> greedyBlocks;
+        double bestCost;
+        boolean improved;
+        boolean expired;
+        int nodes;
+
+        Search(AvailableFragments available, int numSeats, List<SeatingFragment> greedyBlocks, long deadline) {
+            this.numBlocks = greedyBlocks.size();
+            this.deadline = deadline;
+            this.greedyBlocks = greedyBlocks;
+            for (SeatingFragment block : greedyBlocks) {
+                this.bestCost += block.getTotalSeatCost();
+            }
+            //the other blocks hold at most as many seats as the largest fragments, so the block in the smallest
+            //fragment needs at least the rest
+            int largestOthers = 0;
+            Iterator<SeatingFragment> largestFirst = available.largestFirst().iterator();
+            for (int i = 0; i < this.numBlocks - 1 && largestFirst.hasNext(); i++) {
+                largestOthers += largestFirst.next().getSize();
+            }
+            List<SeatingFragment> candidates = new ArrayList<SeatingFragment>();
+            for (SeatingFragment fragment : available.atLeast(Math.max(1, numSeats - largestOthers))) {
+                if (candidates.size() == MAX_CANDIDATES) {
+                    break;
+                }
+                candidates.add(fragment);
+            }
+            this.fragments = candidates.toArray(new SeatingFragment[0]);
+            this.sizeSums = new int[this.fragments.length + 1];
+            this.cheapestSeatFrom = new double[this.fragments.length + 1];
+            this.cheapestSeatFrom[this.fragments.length] = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < this.fragments.length; i++) {
+                this.sizeSums[i + 1] = this.sizeSums[i] + this.fragments[i].getSize();
+            }
+            for (int i = this.fragments.length - 1; i >= 0; i--) {
+                this.cheapestSeatFrom[i] = Math.min(this.cheapestSeatFrom[i + 1], windowCost(i, 1));
+            }
+            this.chosenFragments = new int[this.numBlocks];
+            this.chosenSizes = new int[this.numBlocks];
+            this.bestFragments = new int[this.numBlocks];
+            this.bestSizes = new int[this.numBlocks];
+        }
+
+        /* places the remaining blocks in fragments from the given one on */
+        void run(int from, int blocksLeft, int seatsLeft, double costSoFar) {
+            if (blocksLeft == 0) {
+                if (seatsLeft == 0 && costSoFar < this.bestCost - EPSILON) {
+                    this.bestCost = costSoFar;
+                    this.improved = true;
+                    System.arraycopy(this.chosenFragments, 0, this.bestFragments, 0, this.numBlocks);
+                    System.arraycopy(this.chosenSizes, 0, this.bestSizes, 0, this.numBlocks);
+                }
+                return;
+            }
+            int depth = this.numBlocks - blocksLeft;
+            for (int i = from; i + blocksLeft <= this.fragments.length && !this.expired; i++) {
+                //fragments only get smaller and their cheapest seats dearer from here, so neither check passes again
+                if (this.sizeSums[i + blocksLeft] - this.sizeSums[i] < seatsLeft
+                        || costSoFar + seatsLeft * this.cheapestSeatFrom[i] >= this.bestCost - EPSILON) {
+                    return;
+                }
+                int largestOthers = this.sizeSums[i + blocksLeft] - this.sizeSums[i + 1];
+                int largest = Math.min(this.fragments[i].getSize(), seatsLeft - (blocksLeft - 1));
+                int smallest = Math.max(1, seatsLeft - largestOthers);
+                for (int size = largest; size >= smallest && !this.expired; size--) {
+                    if (++this.nodes % NODES_BETWEEN_CLOCK_CHECKS == 0 && System.nanoTime() > this.deadline) {
+                        this.expired = true;
+                        return;
+                    }
+                    double cost = costSoFar + windowCost(i, size);
+                    int rest = seatsLeft - size;
+                    if (rest > 0 && cost + rest * this.cheapestSeatFrom[i + 1] >= this.bestCost - EPSILON
+                            || rest == 0 && cost >= this.bestCost - EPSILON) {
+                        continue;
+                    }
+                    this.chosenFragments[depth] = i;
+                    this.chosenSizes[depth] = size;
+                    run(i + 1, blocksLeft - 1, rest, cost);
+                }
+            }
+        }
+
+        //the cost of the cheapest window of the given size in the fragment
+        double windowCost(int fragment, int size) {
+            SeatingFragment candidate = this.fragments[fragment];
+            SeatingRow row = candidate.row();
+            int start = row.bestWindowStart(candidate.getStartIndex(), candidate.getEndIndex(), size);
+            return row.rangeCost(start, start + size - 1);
+        }
+
+        List<SeatingFragment> bestBlocks() {
+            if (!this.improved) {
+                return this.greedyBlocks;
+            }
+            List<SeatingFragment> blocks = new ArrayList<SeatingFragment>(this.numBlocks);
+            for (int i = 0; i < this.numBlocks; i++) {
+                blocks.add(this.fragments[this.bestFragments[i]].bestBlockFromFragment(this.bestSizes[i]).get());
+            }
+            return blocks;
+        }
+    }
+}
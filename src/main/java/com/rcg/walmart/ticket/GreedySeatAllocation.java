@@ -0,0 +1,148 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.seating.BestBlockCache;
+import com.rcg.walmart.seating.AvailableFragments;
+import com.rcg.walmart.seating.SeatingFragment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Largest blocks first while they still fit, then the cheapest window among the blocks able to seat the rest.  This
+ * always uses as few blocks as possible, the seats within those blocks are not always the cheapest to be had.
+ *
+ * Pricing the windows of every fragment able to seat the rest is the bulk of the work on a large venue.  Given a pool,
+ * once there are more of those fragments than the threshold they are split into ranges priced on the pool's threads,
+ * each range's cheapest window is found and the cheapest of those wins, with ties going to the fragment the index
+ * orders first just as in the sequential walk.
+ *
+ * Groups small enough for the index's BestBlockCache are answered by cheapestBlock, which the index serves from that
+ * cache, when any fragment can seat them whole.
+ */
+public class GreedySeatAllocation implements SeatAllocationStrategy {
+    //fragments priced by one task before splitting its range any further
+    private static final int FRAGMENTS_PER_TASK = 256;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    public GreedySeatAllocation() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param parallelThreshold the number of fragments able to seat the rest of the group above which their windows
+     *                          are priced in parallel on the pool
+     */
+    public GreedySeatAllocation(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @Override
+    public Optional<List<SeatingFragment>> allocate(AvailableFragments available, int numSeats) {
+        ArrayList<SeatingFragment> blocksDesired = new ArrayList<SeatingFragment>();
+        if (numSeats >= 1 && numSeats <= BestBlockCache.MAX_GROUP_SIZE) {
+            //the walk below ends in the same window, the cheapest among every fragment able to seat the group
+            Optional<SeatingFragment> cached = available.cheapestBlock(numSeats);
+            if (cached.isPresent()) {
+                blocksDesired.add(cached.get());
+                return Optional.of(blocksDesired);
+            }
+        }
+        int seatsStillNeeded = numSeats;
+
+        //the index hands fragments back largest first and cheapest first within a size, so a single walk replaces
+        //repeatedly finding the largest size, filtering on it and scanning again for the cheapest block.
+        Iterator<SeatingFragment> largestFirst = available.largestFirst().iterator();
+        while (seatsStillNeeded > 0 && largestFirst.hasNext()) {
+            SeatingFragment candidate = largestFirst.next();
+            if (candidate.getSize() <= seatsStillNeeded) {
+                blocksDesired.add(candidate);
+                seatsStillNeeded -= candidate.getSize();
+            } else {
+                //this and every following fragment down to the remaining size can seat the rest in one block
+                if (this.pool != null) {
+                    blocksDesired.add(cheapestWindow(candidate, largestFirst, seatsStillNeeded));
+                    seatsStillNeeded = 0;
+                    break;
+                }
+                SeatingFragment finalFragment = candidate.bestBlockFromFragment(seatsStillNeeded).get();
+                while (largestFirst.hasNext()) {
+                    SeatingFragment nextCandidate = largestFirst.next();
+                    if (nextCandidate.getSize() < seatsStillNeeded) {
+                        break;
+                    }
+                    SeatingFragment nextBlock = nextCandidate.bestBlockFromFragment(seatsStillNeeded).get();
+                    if (nextBlock.getTotalSeatCost() < finalFragment.getTotalSeatCost()) {
+                        finalFragment = nextBlock;
+                    }
+                }
+                blocksDesired.add(finalFragment);
+                seatsStillNeeded -= seatsStillNeeded;
+            }
+        }
+        if (seatsStillNeeded > 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(blocksDesired);
+    }
+
+    //the cheapest window of numSeats among the candidate and the fragments following it that are large enough
+    private SeatingFragment cheapestWindow(SeatingFragment candidate, Iterator<SeatingFragment> largestFirst,
+                                           int numSeats) {
+        List<SeatingFragment> candidates = new ArrayList<SeatingFragment>();
+        candidates.add(candidate);
+        while (largestFirst.hasNext()) {
+            SeatingFragment nextCandidate = largestFirst.next();
+            if (nextCandidate.getSize() < numSeats) {
+                break;
+            }
+            candidates.add(nextCandidate);
+        }
+        CheapestWindow search = new CheapestWindow(candidates, 0, candidates.size(), numSeats);
+        return candidates.size() > this.parallelThreshold ? this.pool.invoke(search) : search.compute();
+    }
+
+    /* the cheapest window among a range of the candidates, the earliest candidate's on ties */
+    private static class CheapestWindow extends RecursiveTask<SeatingFragment> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SeatingFragment> candidates;
+        private final int from;
+        private final int to;
+        private final int numSeats;
+
+        CheapestWindow(List<SeatingFragment> candidates, int from, int to, int numSeats) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.numSeats = numSeats;
+        }
+
+        @Override
+        protected SeatingFragment compute() {
+            if (this.to - this.from > FRAGMENTS_PER_TASK && inForkJoinPool()) {
+                int middle = (this.from + this.to) >>> 1;
+                CheapestWindow second = new CheapestWindow(this.candidates, middle, this.to, this.numSeats);
+                second.fork();
+                SeatingFragment first = new CheapestWindow(this.candidates, this.from, middle, this.numSeats).compute();
+                SeatingFragment secondBest = second.join();
+                return secondBest.getTotalSeatCost() < first.getTotalSeatCost() ? secondBest : first;
+            }
+            SeatingFragment best = this.candidates.get(this.from).bestBlockFromFragment(this.numSeats).get();
+            for (int i = this.from + 1; i < this.to; i++) {
+                SeatingFragment block = this.candidates.get(i).bestBlockFromFragment(this.numSeats).get();
+                if (block.getTotalSeatCost() < best.getTotalSeatCost()) {
+                    best = block;
+                }
+            }
+            return best;
+        }
+    }
+}
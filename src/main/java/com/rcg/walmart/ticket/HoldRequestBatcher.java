@@ -0,0 +1,219 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingFragment;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/*
+ * Collects the hold requests arriving within a short window and allocates them together on one thread, in the order
+ * they arrived.  Requests for the same number of seats share a single walk over the fragments able to seat them: the
+ * walk keeps the cheapest window of the best few fragments, and the requests are then served from those, with the
+ * remainders of carved fragments going back into the running of every group size.  Windows are ranked as the greedy
+ * search ranks them, by cost and then by the index's order of their fragments, so a request seated from a single
+ * fragment gets the seats a greedy search made on its own at that point would, without walking the fragments once
+ * per request, and the requests of a burst never race each other for seats.
+ *
+ * Requests no single fragment can seat, and seats lost to holds made outside of the batcher, go through the regular
+ * search.
+ */
+class HoldRequestBatcher implements AutoCloseable {
+    private final EventService eventService;
+    private final int holdDurationMinutes;
+    private final long windowNanos;
+    private final int maxBatch;
+    //the regular one request at a time search and hold
+    private final BiFunction<Integer, String, SeatHold> individualHold;
+    private final BlockingQueue<HoldRequest> pending;
+    private final Thread allocator;
+    private volatile boolean running;
+
+    private static class HoldRequest {
+        final int numSeats;
+        final String customerEmail;
+        final CompletableFuture<SeatHold> result = new CompletableFuture<SeatHold>();
+
+        HoldRequest(int numSeats, String customerEmail) {
+            this.numSeats = numSeats;
+            this.customerEmail = customerEmail;
+        }
+    }
+
+    /* the cheapest window of a free fragment, a candidate for one of the requests of a group */
+    private static class Candidate {
+        final SeatingFragment fragment;
+        final SeatingFragment window;
+
+        Candidate(SeatingFragment fragment, SeatingFragment window) {
+            this.fragment = fragment;
+            this.window = window;
+        }
+    }
+
+    private static final Comparator<Candidate> CHEAPEST_WINDOW = (c1, c2) -> {
+        int result = Double.compare(c1.window.getTotalSeatCost(), c2.window.getTotalSeatCost());
+        return result != 0 ? result : FreeFragmentIndex.LARGEST_THEN_CHEAPEST.compare(c1.fragment, c2.fragment);
+    };
+
+    /* the candidates of one group size, cheapest first, and the best one the walk left out */
+    private static class Candidates {
+        final PriorityQueue<Candidate> cheapestFirst;
+        final Candidate firstLeftOut;
+
+        Candidates(PriorityQueue<Candidate> cheapestFirst, Candidate firstLeftOut) {
+            this.cheapestFirst = cheapestFirst;
+            this.firstLeftOut = firstLeftOut;
+        }
+
+        //once the kept candidates are no better than one left out, or gone, only a new walk knows the cheapest window
+        boolean exhausted() {
+            return this.cheapestFirst.isEmpty()
+                    || this.firstLeftOut != null && CHEAPEST_WINDOW.compare(this.cheapestFirst.peek(), this.firstLeftOut) > 0;
+        }
+    }
+
+    HoldRequestBatcher(EventService eventService, int holdDurationMinutes, Duration window, int maxBatch,
+                       BiFunction<Integer, String, SeatHold> individualHold) {
+        this.eventService = eventService;
+        this.holdDurationMinutes = holdDurationMinutes;
+        this.windowNanos = window.toNanos();
+        this.maxBatch = maxBatch;
+        this.individualHold = individualHold;
+        this.pending = new LinkedBlockingQueue<HoldRequest>();
+        this.running = true;
+        this.allocator = new Thread(this::allocateLoop, "hold-batcher-" + eventService.getEventId());
+        this.allocator.setDaemon(true);
+        this.allocator.start();
+    }
+
+    /* completes with the hold, or with null when the seats could not be found or held */
+    CompletableFuture<SeatHold> submit(int numSeats, String customerEmail) {
+        HoldRequest request = new HoldRequest(numSeats, customerEmail);
+        if (numSeats <= 0 || !this.running) {
+            request.result.complete(null);
+        } else {
+            this.pending.add(request);
+            if (!this.running && this.pending.remove(request)) {
+                request.result.complete(null);
+            }
+        }
+        return request.result;
+    }
+
+    private void allocateLoop() {
+        List<HoldRequest> batch = new ArrayList<HoldRequest>(this.maxBatch);
+        while (this.running) {
+            try {
+                batch.add(this.pending.take());
+                //the window opens with the first request, whatever else arrives before it closes joins the batch
+                long windowEnd = System.nanoTime() + this.windowNanos;
+                while (batch.size() < this.maxBatch) {
+                    HoldRequest next = this.pending.poll(windowEnd - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(request -> request.result.complete(null));
+                break;
+            }
+            try {
+                allocate(batch);
+            } catch (RuntimeException e) {
+                //requests already settled keep their outcome, only those left hanging share the failure
+                batch.forEach(request -> request.result.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+        List<HoldRequest> abandoned = new ArrayList<HoldRequest>();
+        this.pending.drainTo(abandoned);
+        abandoned.forEach(request -> request.result.complete(null));
+    }
+
+    private void allocate(List<HoldRequest> batch) {
+        this.eventService.removeStaleSeatHolds();
+        //the requests of each group size still to be served, how many candidates a walk for the size keeps
+        Map<Integer, Integer> unserved = new HashMap<Integer, Integer>();
+        for (HoldRequest request : batch) {
+            unserved.merge(request.numSeats, 1, Integer::sum);
+        }
+        Map<Integer, Candidates> bySize = new HashMap<Integer, Candidates>();
+        for (HoldRequest request : batch) {
+            try {
+                Candidates candidates = bySize.get(request.numSeats);
+                if (candidates == null || candidates.exhausted()) {
+                    candidates = cheapestCandidates(this.eventService.getAvailableFragmentIndex(), request.numSeats,
+                            unserved.get(request.numSeats));
+                    bySize.put(request.numSeats, candidates);
+                }
+                request.result.complete(allocateRequest(request, candidates, bySize));
+            } catch (RuntimeException e) {
+                //a request failing leaves the rest of the batch to be allocated
+                request.result.completeExceptionally(e);
+            }
+            unserved.merge(request.numSeats, -1, Integer::sum);
+        }
+    }
+
+    private SeatHold allocateRequest(HoldRequest request, Candidates candidates, Map<Integer, Candidates> bySize) {
+        while (!candidates.exhausted()) {
+            Candidate best = candidates.cheapestFirst.poll();
+            Optional<SeatHold> hold = this.eventService.createSeatHold(Collections.singletonList(best.window),
+                    request.customerEmail, this.holdDurationMinutes);
+            if (hold.isPresent()) {
+                //the fragment is gone for every group size, what is left of it competes with their other candidates
+                List<SeatingFragment> remainders = best.fragment.minusAnother(best.window).get();
+                for (Map.Entry<Integer, Candidates> group : bySize.entrySet()) {
+                    PriorityQueue<Candidate> cheapestFirst = group.getValue().cheapestFirst;
+                    //walks made since the fragment was carved hold the index's copy of a remainder, compare by position
+                    cheapestFirst.removeIf(candidate ->
+                            FreeFragmentIndex.LARGEST_THEN_CHEAPEST.compare(candidate.fragment, best.fragment) == 0);
+                    for (SeatingFragment remainder : remainders) {
+                        remainder.bestBlockFromFragment(group.getKey())
+                                .ifPresent(window -> cheapestFirst.add(new Candidate(remainder, window)));
+                    }
+                }
+                return hold.get();
+            }
+        }
+        //no single fragment left that fits, or the candidates were taken outside of the batch
+        return this.individualHold.apply(request.numSeats, request.customerEmail);
+    }
+
+    /* one walk over the fragments able to seat numSeats, keeping the count cheapest windows cheapest first */
+    private static Candidates cheapestCandidates(FreeFragmentIndex available, int numSeats, int count) {
+        PriorityQueue<Candidate> mostExpensiveFirst = new PriorityQueue<Candidate>(count + 1, CHEAPEST_WINDOW.reversed());
+        Candidate firstLeftOut = null;
+        for (SeatingFragment fragment : available.atLeast(numSeats)) {
+            Candidate candidate = new Candidate(fragment, fragment.bestBlockFromFragment(numSeats).get());
+            mostExpensiveFirst.add(candidate);
+            if (mostExpensiveFirst.size() > count) {
+                Candidate leftOut = mostExpensiveFirst.poll();
+                if (firstLeftOut == null || CHEAPEST_WINDOW.compare(leftOut, firstLeftOut) < 0) {
+                    firstLeftOut = leftOut;
+                }
+            }
+        }
+        PriorityQueue<Candidate> cheapestFirst = new PriorityQueue<Candidate>(Math.max(1, count), CHEAPEST_WINDOW);
+        cheapestFirst.addAll(mostExpensiveFirst);
+        return new Candidates(cheapestFirst, firstLeftOut);
+    }
+
+    /* stops collecting, requests not yet allocated complete with null */
+    @Override
+    public void close() {
+        this.running = false;
+        this.allocator.interrupt();
+        try {
+            this.allocator.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.seating.AvailableFragments;
+import com.rcg.walmart.seating.SeatingFragment;
+
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Decides which free seats a group gets.  Strategies only read the free fragments, the blocks they pick are claimed
+ * by the TicketService afterwards and a strategy may be asked again when another hold takes them first.
+ */
+@FunctionalInterface
+public interface SeatAllocationStrategy {
+
+    /**
+     * @return the blocks to hold, empty when the free fragments can not seat the group
+     */
+    Optional<List<SeatingFragment>> allocate(AvailableFragments available, int numSeats);
+}
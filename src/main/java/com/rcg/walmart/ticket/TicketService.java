@@ -1,33 +1,154 @@
 package com.rcg.walmart.ticket;
 
+import com.rcg.walmart.event.AvailabilitySnapshot;
+import com.rcg.walmart.event.EventCommandPipeline;
+import com.rcg.walmart.event.EventHandle;
+import com.rcg.walmart.event.EventRegistry;
 import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.event.ExpirySweeper;
 import com.rcg.walmart.locking.Lock;
 import com.rcg.walmart.locking.LockService;
 import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seathold.SeatHoldQuery;
+import com.rcg.walmart.seating.BestBlockCache;
+import com.rcg.walmart.seating.FreeFragmentIndex;
 import com.rcg.walmart.seating.SeatingFragment;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class TicketService {
 
-    //Because of the signature of the TicketService and the scope of the assignment, a simple private instance of
-    //the eventService is being used here without parameters as there is not a good way to look up the event from the
-    // signatures used to create the holds and reservations.
+    //The original TicketService signatures carry no event id, those calls go to the default event.  Every call also
+    //has a variant taking the event id, which the controller uses.
     private static final int HOLD_DURATION_MINUTES = 2;
+    //searches lost to concurrent holds on the same seats before giving up on a request
+    private static final int MAX_HOLD_ATTEMPTS = 16;
+    //rows are locked in stripes, holds only wait on each other when their rows share a stripe
+    private static final int ROW_LOCK_STRIPES = 16;
+    private static final Duration ROW_LOCK_WAIT = Duration.ofMillis(250);
+    private static final int MAX_HOLD_BATCH = 512;
+    private static final String DEFAULT_EVENT_ID = "main_event";
+    private static final String COMMAND_PIPELINE = "command-pipeline";
+    private static final String HOLD_BATCHER = "hold-batcher";
+    private static final String EXPIRY_SWEEPER = "expiry-sweeper";
+    private static final GreedySeatAllocation GREEDY = new GreedySeatAllocation();
 
-    @Autowired
-    private EventService eventService;
-    @Autowired
+    private EventRegistry eventRegistry;
     private LockService lockService;
+    private String defaultEventId;
+    //every change to an event is applied by that event's pipeline writer thread
+    private boolean singleWriter;
+    //when above zero, holds requested within the window are allocated together
+    private long batchWindowMillis;
+    private SeatAllocationStrategy allocationStrategy = GREEDY;
+    //off for callers that sweep the events themselves and need them left alone otherwise
+    private boolean expirySweeping = true;
 
     public TicketService(EventService eventService, LockService lockService) {
+        this(eventService, lockService, false);
+    }
+
+    public TicketService(EventService eventService, LockService lockService, boolean singleWriter) {
+        this(eventService, lockService, singleWriter, 0);
+    }
+
+    public TicketService(EventService eventService, LockService lockService, boolean singleWriter, long batchWindowMillis) {
+        this(EventRegistry.of(eventService), eventService.getEventId(), lockService, singleWriter, batchWindowMillis);
+    }
+
+    public TicketService(EventRegistry eventRegistry, LockService lockService, boolean singleWriter,
+                         long batchWindowMillis) {
+        this(eventRegistry, DEFAULT_EVENT_ID, lockService, singleWriter, batchWindowMillis);
+    }
+
+    /**
+     * @param singleWriter          apply every change to an event on one writer thread per event
+     * @param batchWindowMillis     when above zero and not in single writer mode, hold requests for an event arriving
+     *                              within this many milliseconds of each other are allocated as one batch
+     * @param allocationBudgetMillis when above zero, search this long per request for cheaper seats than the greedy
+     *                              allocation finds
+     * @param parallelSearchThreshold when above zero, price the windows of the fragments able to seat a group on the
+     *                              common fork join pool once there are more of them than this
+     */
+    @Autowired
+    public TicketService(EventRegistry eventRegistry, LockService lockService,
+                         @Value("${ticketservice.single-writer:false}") boolean singleWriter,
+                         @Value("${ticketservice.batch-window-ms:0}") long batchWindowMillis,
+                         @Value("${ticketservice.allocation-budget-ms:0}") long allocationBudgetMillis,
+                         @Value("${ticketservice.parallel-search-threshold:0}") int parallelSearchThreshold) {
+        this(eventRegistry, DEFAULT_EVENT_ID, lockService, singleWriter, batchWindowMillis);
+        GreedySeatAllocation greedy = parallelSearchThreshold > 0
+                ? new GreedySeatAllocation(ForkJoinPool.commonPool(), parallelSearchThreshold)
+                : GREEDY;
+        this.allocationStrategy = allocationBudgetMillis > 0
+                ? new BranchAndBoundSeatAllocation(Duration.ofMillis(allocationBudgetMillis), greedy)
+                : greedy;
+    }
+
+    private TicketService(EventRegistry eventRegistry, String defaultEventId, LockService lockService,
+                          boolean singleWriter, long batchWindowMillis) {
+        this.eventRegistry = eventRegistry;
+        this.defaultEventId = defaultEventId;
         this.lockService = lockService;
-        this.eventService = eventService;
+        this.singleWriter = singleWriter;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /* how seats are picked for a group, the greedy allocation unless set */
+    public void setAllocationStrategy(SeatAllocationStrategy allocationStrategy) {
+        this.allocationStrategy = allocationStrategy;
+    }
+
+    /* whether events get a background ExpirySweeper outside single writer mode, on unless turned off */
+    public void setExpirySweeping(boolean expirySweeping) {
+        this.expirySweeping = expirySweeping;
+    }
+
+    /* stops the per event pipeline and batcher threads */
+    public void shutdown() {
+        this.eventRegistry.closeAttachments();
+    }
+
+    /* runs the action against the event, pinned in memory meanwhile, or returns orElse for an unknown event */
+    private <T> T withEvent(String eventId, Function<EventHandle, T> action, T orElse) {
+        Optional<EventHandle> event = this.eventRegistry.open(eventId);
+        if (!event.isPresent()) {
+            return orElse;
+        }
+        try (EventHandle handle = event.get()) {
+            return action.apply(handle);
+        }
+    }
+
+    private EventCommandPipeline commandPipeline(EventHandle event) {
+        return this.singleWriter ? event.attachment(COMMAND_PIPELINE, EventCommandPipeline::new) : null;
+    }
+
+    //the pipeline's writer sweeps whenever it is idle, otherwise a sweeper gives back the holds of quiet events
+    private void expirySweeper(EventHandle event) {
+        if (!this.singleWriter && this.expirySweeping) {
+            event.attachment(EXPIRY_SWEEPER, ExpirySweeper::new);
+        }
+    }
+
+    private HoldRequestBatcher holdBatcher(EventHandle event) {
+        if (this.singleWriter || this.batchWindowMillis <= 0) {
+            return null;
+        }
+        return event.attachment(HOLD_BATCHER, eventService -> new HoldRequestBatcher(eventService, HOLD_DURATION_MINUTES,
+                Duration.ofMillis(this.batchWindowMillis), MAX_HOLD_BATCH,
+                (numSeats, customerEmail) -> holdIndividually(eventService, numSeats, customerEmail)));
     }
 
     /**
@@ -36,7 +157,42 @@ public class TicketService {
      * @return the number of tickets available in the venue
      */
     public int numSeatsAvailable() {
-        return this.eventService.totalSeatsAvailable();
+        return numSeatsAvailable(this.defaultEventId);
+    }
+
+    /* the number of seats of the event neither held nor reserved, 0 for an unknown event.  A single read of the
+       latest published count, lapsed holds are given back by the writers and the event's sweeper rather than here */
+    public int numSeatsAvailable(String eventId) {
+        return withEvent(eventId, event -> {
+            expirySweeper(event);
+            return event.getEventService().getAvailability().getSeatsAvailable();
+        }, 0);
+    }
+
+    /* the latest published free seats and seat counts of the event, null for an unknown event */
+    public AvailabilitySnapshot getAvailability(String eventId) {
+        return withEvent(eventId, event -> event.getEventService().getAvailability(), null);
+    }
+
+    /**
+     * The seats findAndHoldSeats would pick right now, worked out on the latest availability snapshot without
+     * holding them or touching the event
+     *
+     * @return the seats, empty for an unknown event or when the group can not be seated
+     */
+    public Optional<List<SeatingFragment>> previewSeats(String eventId, int numSeats) {
+        AvailabilitySnapshot availability = getAvailability(eventId);
+        if (availability == null || numSeats <= 0 || availability.getSeatsAvailable() < numSeats) {
+            return Optional.empty();
+        }
+        return this.allocationStrategy.allocate(availability, numSeats);
+    }
+
+    /* lookups, hits and invalidations of the event's cache of the cheapest block per small group size, null for an
+       unknown event */
+    public BestBlockCache.Stats getBestBlockCacheStats(String eventId) {
+        return withEvent(eventId, event -> event.getEventService().getAvailableFragmentIndex().bestBlocks().getStats(),
+                null);
     }
 
     /**
@@ -48,22 +204,125 @@ public class TicketService {
      * information
      */
     public SeatHold findAndHoldSeats(int numSeats, String customerEmail) {
-        Optional<Lock> eventLock = lockService.acquireLock(eventService.getEventId());
-        if (!eventLock.isPresent()) {
+        return findAndHoldSeats(this.defaultEventId, numSeats, customerEmail);
+    }
+
+    /* findAndHoldSeats for the event, null for an unknown event */
+    public SeatHold findAndHoldSeats(String eventId, int numSeats, String customerEmail) {
+        return withEvent(eventId, event -> {
+            if (commandPipeline(event) != null || holdBatcher(event) != null) {
+                return findAndHoldSeatsAsync(event, numSeats, customerEmail).join();
+            }
+            expirySweeper(event);
+            return holdIndividually(event.getEventService(), numSeats, customerEmail);
+        }, null);
+    }
+
+    private SeatHold holdIndividually(EventService eventService, int numSeats, String customerEmail) {
+        //the search reads the free fragments without locking the event, only the row stripes the seats found fall in
+        //are locked while the event service claims them.  A claim lost to another hold or stripes still busy after
+        //the wait mean searching again
+        for (int attempt = 0; attempt < MAX_HOLD_ATTEMPTS; attempt++) {
+            Optional<List<SeatingFragment>> seatsRequested = findBestSeatingFragments(eventService, numSeats);
+            if (!seatsRequested.isPresent()) {
+                //unable to build seating fragments to accommodate request
+                return null;
+                //at the controller level we would convert this null to something more meaningful
+            }
+            //have a desired collection of seats based on business logic contained here, handing off the request to the
+            //eventService for final acceptance and management of the available seats.
+            Optional<List<Lock>> rowLocks = lockService.acquireLocks(rowLockIds(eventService, seatsRequested.get()), ROW_LOCK_WAIT);
+            if (rowLocks.isPresent()) {
+                Optional<SeatHold> reservationOptional = holdWithRowsLocked(eventService, seatsRequested.get(), customerEmail, rowLocks.get());
+                if (reservationOptional.isPresent()) {
+                    return reservationOptional.get();
+                }
+            }
+            Thread.yield();
+        }
+        return null;
+    }
+
+    /**
+     * findAndHoldSeats without parking the calling thread while the rows are locked by other holds, the request waits
+     * in line for them and carries on on whichever thread releases them
+     *
+     * @return completes with the SeatHold, or with null when the seats could not be found or held
+     */
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(int numSeats, String customerEmail) {
+        return findAndHoldSeatsAsync(this.defaultEventId, numSeats, customerEmail);
+    }
+
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(String eventId, int numSeats, String customerEmail) {
+        Optional<EventHandle> event = this.eventRegistry.open(eventId);
+        if (!event.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        //the event stays pinned until the hold is settled
+        CompletableFuture<SeatHold> hold = findAndHoldSeatsAsync(event.get(), numSeats, customerEmail);
+        hold.whenComplete((seatHold, error) -> event.get().close());
+        return hold;
+    }
+
+    /* a full or closed command ring turns the request away like a sold out event, anything else is a failure */
+    private static SeatHold rejectedAsUnheld(Throwable error) {
+        if (error instanceof RejectedExecutionException) {
             return null;
-            //at the controller level we would convert this null to something more meaningful
         }
+        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+    }
+
+    private CompletableFuture<SeatHold> findAndHoldSeatsAsync(EventHandle event, int numSeats, String customerEmail) {
+        expirySweeper(event);
+        EventCommandPipeline commandPipeline = commandPipeline(event);
+        if (commandPipeline != null) {
+            //the writer searches and claims in one go, nothing can take the seats in between so there is no retrying
+            return commandPipeline.submit(eventService -> findBestSeatingFragments(eventService, numSeats)
+                    .flatMap(seatsRequested -> eventService.createSeatHold(seatsRequested, customerEmail, HOLD_DURATION_MINUTES))
+                    .orElse(null))
+                    .exceptionally(TicketService::rejectedAsUnheld);
+        }
+        HoldRequestBatcher holdBatcher = holdBatcher(event);
+        if (holdBatcher != null) {
+            return holdBatcher.submit(numSeats, customerEmail);
+        }
+        return findAndHoldSeatsAsync(event.getEventService(), numSeats, customerEmail, 0);
+    }
 
-        Optional<List<SeatingFragment>> seatsRequested = findBestSeatingFragments(numSeats);
+    private CompletableFuture<SeatHold> findAndHoldSeatsAsync(EventService eventService, int numSeats, String customerEmail, int attempt) {
+        if (attempt >= MAX_HOLD_ATTEMPTS) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Optional<List<SeatingFragment>> seatsRequested = findBestSeatingFragments(eventService, numSeats);
         if (!seatsRequested.isPresent()) {
-            //unable to build seating fragments to accommodate request
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
-        //have a desired collection of seats based on business logic contained here, handing off the request to the
-        //eventService for final acceptance and management of the available seats.
-        Optional<SeatHold> reservationOptional = this.eventService.createSeatHold(seatsRequested.get(), customerEmail, HOLD_DURATION_MINUTES);
-        lockService.releaseLock(eventLock.get());
-        return reservationOptional.orElse(null);
+        //a timed out wait completes on the lock service's timer thread, the hold and any retry search must not run there
+        return lockService.acquireLocksAsync(rowLockIds(eventService, seatsRequested.get()), ROW_LOCK_WAIT)
+                .handleAsync((rowLocks, error) -> error != null
+                        ? Optional.<SeatHold>empty()
+                        : holdWithRowsLocked(eventService, seatsRequested.get(), customerEmail, rowLocks))
+                .thenCompose(reservationOptional -> reservationOptional.isPresent()
+                        ? CompletableFuture.completedFuture(reservationOptional.get())
+                        : findAndHoldSeatsAsync(eventService, numSeats, customerEmail, attempt + 1));
+    }
+
+    private Optional<SeatHold> holdWithRowsLocked(EventService eventService, List<SeatingFragment> seatsRequested,
+                                                  String customerEmail, List<Lock> rowLocks) {
+        try {
+            return eventService.createSeatHold(seatsRequested, customerEmail, HOLD_DURATION_MINUTES);
+        } finally {
+            lockService.releaseLocks(rowLocks);
+        }
+    }
+
+    /* the lock ids of the row stripes the seats fall in */
+    private static Set<String> rowLockIds(EventService eventService, List<SeatingFragment> seats) {
+        Set<String> lockIds = new HashSet<String>();
+        for (SeatingFragment fragment : seats) {
+            lockIds.add(eventService.getEventId() + "/rows-" + Math.floorMod(fragment.getBlockIndex(), ROW_LOCK_STRIPES));
+        }
+        return lockIds;
     }
 
     /**
@@ -75,54 +334,83 @@ public class TicketService {
      * @return a reservation confirmation code
      */
     public String reserveSeats(int seatHoldId, String customerEmail) {
-        return this.eventService.confirmSeatHold(seatHoldId, customerEmail).orElse(null);
+        return reserveSeats(this.defaultEventId, seatHoldId, customerEmail);
+    }
+
+    public String reserveSeats(String eventId, int seatHoldId, String customerEmail) {
+        return withEvent(eventId, event -> {
+            EventCommandPipeline commandPipeline = commandPipeline(event);
+            if (commandPipeline != null) {
+                return commandPipeline.confirmSeatHold(seatHoldId, customerEmail).join().orElse(null);
+            }
+            return event.getEventService().confirmSeatHold(seatHoldId, customerEmail).orElse(null);
+        }, null);
     }
 
     public List<String> getEvents() {
-        return Arrays.asList(eventService.getEventId());
+        return this.eventRegistry.getEventIds();
+    }
+
+    /* whether the event is known, without building it */
+    public boolean hasEvent(String eventId) {
+        return this.eventRegistry.isRegistered(eventId);
     }
 
     public List<SeatHold> getReservations() {
-        return new ArrayList<>(eventService.getAllSeatHolds());
+        return getReservations(this.defaultEventId);
+    }
+
+    public List<SeatHold> getReservations(String eventId) {
+        return withEvent(eventId, event -> {
+            EventCommandPipeline commandPipeline = commandPipeline(event);
+            if (commandPipeline != null) {
+                //listing sweeps expired holds, which is a change like any other
+                return commandPipeline.submit(EventService::getAllSeatHolds).join();
+            }
+            return event.getEventService().getAllSeatHolds();
+        }, Collections.<SeatHold>emptyList());
+    }
+
+    /**
+     * One page of the event's current holds and reservations in seat hold id order, handed to the visitor one at a
+     * time while the event is pinned, so nothing is copied or swept
+     *
+     * @param afterSeatHoldId the cursor, 0 for the first page
+     * @return the cursor of the next page, empty after the last page or for an unknown event
+     */
+    public OptionalInt forEachSeatHold(String eventId, SeatHoldQuery query, int afterSeatHoldId, int limit,
+                                       Consumer<SeatHold> visitor) {
+        return withEvent(eventId, event -> event.getEventService().visitSeatHolds(query, afterSeatHoldId, limit, visitor),
+                OptionalInt.empty());
     }
 
     public SeatHold getReservation(int seatHoldId, String emailAddress) {
-        return eventService.getSeatHold(seatHoldId, emailAddress).orElse(null);
+        return getReservation(this.defaultEventId, seatHoldId, emailAddress);
+    }
+
+    public SeatHold getReservation(String eventId, int seatHoldId, String emailAddress) {
+        return withEvent(eventId, event -> event.getEventService().getSeatHold(seatHoldId, emailAddress).orElse(null), null);
     }
 
     /* as the ticket service evolves we want the service to be responsible for the business logic
        of determining "best" and leave the eventService to manage the seat availability, and reservation logic.
      */
     protected Optional<List<SeatingFragment>> findBestSeatingFragments(int numSeats) {
-        ArrayList<SeatingFragment> blocksDesired = new ArrayList<SeatingFragment>();
-        if (numSeatsAvailable() < numSeats) {
-            return Optional.empty();
+        try (EventHandle event = this.eventRegistry.open(this.defaultEventId).get()) {
+            return findBestSeatingFragments(event.getEventService(), numSeats);
         }
-        List<SeatingFragment> availableFragments = new ArrayList<SeatingFragment>(eventService.getAvailableSeatingFragments()); //going to work on a copy, and remove seat blocks as necesssary
-        int seatsStillNeeded = numSeats;
-
-        Comparator<SeatingFragment> seatingFragmentCostComparator = (sf1, sf2) -> Double.compare(sf1.getTotalSeatCost(), sf2.getTotalSeatCost());
-        while (seatsStillNeeded > 0) {
-            Stream<Integer> fragmentSizes = availableFragments.stream().map(sf -> sf.getSize());
-            int largestBlockSize = fragmentSizes.max(Integer::compare).orElse(0);
-            if (largestBlockSize <= seatsStillNeeded) {
-                List<SeatingFragment> fragmentsUnderConsideration = availableFragments.stream().filter(sf -> sf.getSize() == largestBlockSize).collect(Collectors.toList());
-                Optional<SeatingFragment> bestOption = fragmentsUnderConsideration.stream().min(seatingFragmentCostComparator);
-                //we can be confident that while the seats might go away, they haven't gone away from our copy of the available fragments.
-                blocksDesired.add(bestOption.get());
-                seatsStillNeeded -= bestOption.get().getSize();
-                availableFragments.remove(bestOption.get());
-            } else {
-                final int lastBlockSize = seatsStillNeeded;
-                Stream<SeatingFragment> fragmentsUnderConsideration = availableFragments.stream().filter(sf -> sf.getSize() >= lastBlockSize);
-                SeatingFragment finalFragment = fragmentsUnderConsideration.map(seatingFragment -> seatingFragment.bestBlockFromFragment(lastBlockSize)).map(opt -> opt.get()).min(seatingFragmentCostComparator).get();
-                blocksDesired.add(finalFragment);
-                seatsStillNeeded -= seatsStillNeeded;
-            }
+    }
 
+    private Optional<List<SeatingFragment>> findBestSeatingFragments(EventService eventService, int numSeats) {
+        if (numSeats <= 0 || eventService.totalSeatsAvailable() < numSeats) {
+            return Optional.empty();
         }
+        return this.allocationStrategy.allocate(eventService.getAvailableFragmentIndex(), numSeats);
+    }
 
-        return Optional.of(blocksDesired);
+    /* largest blocks first while they still fit, then the cheapest window among the blocks able to seat the rest */
+    protected static Optional<List<SeatingFragment>> findBestSeatingFragments(FreeFragmentIndex available, int numSeats) {
+        return GREEDY.allocate(available, numSeats);
     }
 
 }
@@ -0,0 +1,54 @@
+package com.rcg.walmart.venue;
+
+/* the straight line distance from a seat to the ideal seat, equal for equal ideal seats so venues can be cached by it */
+final class DistanceFromIdealSeat implements SeatCostFunction {
+    private final int idealRow;
+    private final int idealSeatIndex;
+
+    DistanceFromIdealSeat(int idealRow, int idealSeatIndex) {
+        this.idealRow = idealRow;
+        this.idealSeatIndex = idealSeatIndex;
+    }
+
+    @Override
+    public double seatCost(int row, int seatIndex) {
+        int rowOffset = row - this.idealRow;
+        int seatOffset = seatIndex - this.idealSeatIndex;
+        return Math.sqrt(rowOffset * rowOffset + seatOffset * seatOffset);
+    }
+
+    @Override
+    public void rowCosts(int row, double[] costs) {
+        double rowOffsetSquared = (row - this.idealRow) * (double) (row - this.idealRow);
+        //no calls and no branches in the loop, so it vectorizes
+        for (int seatIndex = 0; seatIndex < costs.length; seatIndex++) {
+            double seatOffset = seatIndex - this.idealSeatIndex;
+            costs[seatIndex] = Math.sqrt(rowOffsetSquared + seatOffset * seatOffset);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DistanceFromIdealSeat that = (DistanceFromIdealSeat) o;
+        return this.idealRow == that.idealRow && this.idealSeatIndex == that.idealSeatIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.idealRow + this.idealSeatIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "DistanceFromIdealSeat{" +
+                "idealRow=" + idealRow +
+                ", idealSeatIndex=" + idealSeatIndex +
+                '}';
+    }
+}
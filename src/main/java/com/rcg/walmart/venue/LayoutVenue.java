@@ -0,0 +1,263 @@
+package com.rcg.walmart.venue;
+
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * A venue of any shape read from a layout file, one line per level, section or row:
+ *
+ *   # comment
+ *   ideal <row> <seat>                      the seat the default cost model measures distance from, before any row
+ *   level <name> [cost <extra>]             starts a level, its extra cost is added to every seat on it
+ *   section <name> [cost <extra>]           starts a section of the current level, likewise
+ *   row <label> <seats> [first <number>]    a row of that many seats numbered from first, 0 unless given
+ *
+ * Rows are numbered in the order they appear, across every level and section, and rows of any length can follow each
+ * other.  Seat numbers double as the position of a seat across the venue, a short row centered under longer ones is
+ * given a first seat number to match.  The file is parsed a line at a time straight into the rows' cost arrays.
+ */
+public class LayoutVenue implements Venue {
+    private final List<SeatingRow> seatingRows;
+    private final List<SeatingFragment> seatingFragments;
+    //level/section/row of every row by block index
+    private final String[] rowLabels;
+    private final SeatCostFunction seatCostFunction;
+    private final int numSeats;
+
+    private LayoutVenue(List<SeatingRow> seatingRows, List<String> rowLabels, SeatCostFunction seatCostFunction) {
+        List<SeatingFragment> fragments = new ArrayList<SeatingFragment>(seatingRows.size());
+        int seats = 0;
+        for (SeatingRow row : seatingRows) {
+            fragments.add(row.asFragment());
+            seats += row.getLength();
+        }
+        this.seatingRows = Collections.unmodifiableList(seatingRows);
+        this.seatingFragments = Collections.unmodifiableList(fragments);
+        this.rowLabels = rowLabels.toArray(new String[0]);
+        this.seatCostFunction = seatCostFunction;
+        this.numSeats = seats;
+    }
+
+    /* reads the layout, pricing seats by their distance from the ideal seat the file names */
+    public static LayoutVenue load(Path layout) throws IOException {
+        return load(layout, null);
+    }
+
+    /* reads the layout, pricing seats with the given cost model plus the extra cost of their level and section */
+    public static LayoutVenue load(Path layout, SeatCostFunction seatCostFunction) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(layout, StandardCharsets.UTF_8)) {
+            return read(reader, seatCostFunction);
+        }
+    }
+
+    /**
+     * @param seatCostFunction the cost model, null for the distance from the file's ideal seat
+     * @throws IllegalArgumentException for a malformed line, naming its line number
+     */
+    public static LayoutVenue read(BufferedReader reader, SeatCostFunction seatCostFunction) throws IOException {
+        List<SeatingRow> rows = new ArrayList<SeatingRow>();
+        List<String> labels = new ArrayList<String>();
+        SeatCostFunction costs = seatCostFunction;
+        String level = null;
+        String section = null;
+        double levelCost = 0;
+        double sectionCost = 0;
+        LineTokens tokens = new LineTokens();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            tokens.reset(line, ++lineNumber);
+            String keyword = tokens.next();
+            if (keyword == null || keyword.startsWith("#")) {
+                continue;
+            }
+            switch (keyword) {
+                case "ideal":
+                    int idealRow = tokens.nextInt();
+                    int idealSeat = tokens.nextInt();
+                    if (!rows.isEmpty()) {
+                        throw tokens.error("the ideal seat must come before the first row");
+                    }
+                    if (seatCostFunction == null) {
+                        costs = SeatCostFunction.distanceFrom(idealRow, idealSeat);
+                    }
+                    break;
+                case "level":
+                    level = tokens.nextWord();
+                    levelCost = tokens.optionalDouble("cost", 0);
+                    section = null;
+                    sectionCost = 0;
+                    break;
+                case "section":
+                    section = tokens.nextWord();
+                    sectionCost = tokens.optionalDouble("cost", 0);
+                    break;
+                case "row":
+                    String label = tokens.nextWord();
+                    int numSeats = tokens.nextInt();
+                    int firstSeatNumber = tokens.optionalInt("first", 0);
+                    if (numSeats <= 0) {
+                        throw tokens.error("a row needs at least one seat");
+                    }
+                    if (costs == null) {
+                        costs = SeatCostFunction.distanceFrom(0, 0);
+                    }
+                    rows.add(new SeatingRow(rows.size(), firstSeatNumber,
+                            rowCosts(costs, rows.size(), firstSeatNumber, numSeats, levelCost + sectionCost)));
+                    labels.add(label(level, section, label));
+                    break;
+                default:
+                    throw tokens.error("unknown keyword " + keyword);
+            }
+            tokens.expectEnd();
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("layout has no rows");
+        }
+        return new LayoutVenue(rows, labels, costs);
+    }
+
+    private static double[] rowCosts(SeatCostFunction costs, int blockIndex, int firstSeatNumber, int numSeats,
+                                     double extraCost) {
+        double[] rowCosts = new double[numSeats];
+        if (firstSeatNumber == 0) {
+            costs.rowCosts(blockIndex, rowCosts);
+        } else {
+            for (int i = 0; i < numSeats; i++) {
+                rowCosts[i] = costs.seatCost(blockIndex, firstSeatNumber + i);
+            }
+        }
+        if (extraCost != 0) {
+            for (int i = 0; i < numSeats; i++) {
+                rowCosts[i] += extraCost;
+            }
+        }
+        return rowCosts;
+    }
+
+    private static String label(String level, String section, String row) {
+        StringBuilder label = new StringBuilder();
+        if (level != null) {
+            label.append(level).append('/');
+        }
+        if (section != null) {
+            label.append(section).append('/');
+        }
+        return label.append(row).toString();
+    }
+
+    @Override
+    public int numSeatsAvailable() {
+        return this.numSeats;
+    }
+
+    @Override
+    public List<SeatingFragment> getSeatingFragments() {
+        return this.seatingFragments;
+    }
+
+    @Override
+    public List<SeatingRow> getSeatingRows() {
+        return this.seatingRows;
+    }
+
+    @Override
+    public SeatCostFunction getSeatCostFunction() {
+        return this.seatCostFunction;
+    }
+
+    /* the level, section and label of the row as level/section/row, leaving out what the layout did not give */
+    public String getRowLabel(int blockIndex) {
+        return this.rowLabels[blockIndex];
+    }
+
+    /* walks the whitespace separated words of one line at a time, reused from line to line */
+    private static class LineTokens {
+        private String line;
+        private int lineNumber;
+        private int position;
+
+        void reset(String line, int lineNumber) {
+            this.line = line;
+            this.lineNumber = lineNumber;
+            this.position = 0;
+        }
+
+        String next() {
+            while (this.position < this.line.length() && Character.isWhitespace(this.line.charAt(this.position))) {
+                this.position++;
+            }
+            if (this.position == this.line.length()) {
+                return null;
+            }
+            int start = this.position;
+            while (this.position < this.line.length() && !Character.isWhitespace(this.line.charAt(this.position))) {
+                this.position++;
+            }
+            return this.line.substring(start, this.position);
+        }
+
+        String nextWord() {
+            String word = next();
+            if (word == null) {
+                throw error("missing value");
+            }
+            return word;
+        }
+
+        int nextInt() {
+            String word = nextWord();
+            try {
+                return Integer.parseInt(word);
+            } catch (NumberFormatException e) {
+                throw error("not a whole number: " + word);
+            }
+        }
+
+        //the value following the keyword when it comes next on the line
+        double optionalDouble(String keyword, double orElse) {
+            if (!optionalKeyword(keyword)) {
+                return orElse;
+            }
+            String word = nextWord();
+            try {
+                return Double.parseDouble(word);
+            } catch (NumberFormatException e) {
+                throw error("not a number: " + word);
+            }
+        }
+
+        int optionalInt(String keyword, int orElse) {
+            return optionalKeyword(keyword) ? nextInt() : orElse;
+        }
+
+        private boolean optionalKeyword(String keyword) {
+            int start = this.position;
+            if (keyword.equals(next())) {
+                return true;
+            }
+            this.position = start;
+            return false;
+        }
+
+        void expectEnd() {
+            String extra = next();
+            if (extra != null && !extra.startsWith("#")) {
+                throw error("unexpected " + extra);
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("line " + this.lineNumber + ": " + message);
+        }
+    }
+}
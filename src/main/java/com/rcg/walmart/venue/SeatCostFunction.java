@@ -0,0 +1,27 @@
+package com.rcg.walmart.venue;
+
+/*
+ * How good a seat is, lower is better.  A venue evaluates its cost function once for every seat when it is built and
+ * keeps the results in primitive arrays with prefix sums, so the seat search never calls back into it and one cost
+ * model costs the same at request time as any other.
+ */
+@FunctionalInterface
+public interface SeatCostFunction {
+
+    double seatCost(int row, int seatIndex);
+
+    /**
+     * Fills in the cost of every seat of a row.  Overriding it with a loop of plain arithmetic over the array lets the
+     * JIT compile it to vector instructions, which is what keeps building very large venues quick.
+     */
+    default void rowCosts(int row, double[] costs) {
+        for (int seatIndex = 0; seatIndex < costs.length; seatIndex++) {
+            costs[seatIndex] = seatCost(row, seatIndex);
+        }
+    }
+
+    /* the straight line distance from the ideal seat, the venue's own choice when none is given */
+    static SeatCostFunction distanceFrom(int idealRow, int idealSeatIndex) {
+        return new DistanceFromIdealSeat(idealRow, idealSeatIndex);
+    }
+}
@@ -2,20 +2,28 @@ package com.rcg.walmart.venue;
 
 import com.rcg.walmart.seating.Seat;
 import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.OptionalDouble;
 
 public class SquareVenue implements Venue {
+    //One immutable row of seat costs per block, shared by every fragment an event carves out of the venue
+    private final List<SeatingRow> seatingRows;
     //These fragments are the empty venue available fragments of the empty venue capturing the relative cost of each
     //seat
-    private List<SeatingFragment> seatingFragments;
+    private final List<SeatingFragment> seatingFragments;
+    private final SeatCostFunction seatCostFunction;
 
     @Override
     public int numSeatsAvailable() {
-        int numSeats = seatingFragments.stream().map(l -> l.getSize()).reduce(0, (a, b) -> a + b);
+        int numSeats = 0;
+        for (SeatingRow row : seatingRows) {
+            numSeats += row.getLength();
+        }
         return numSeats;
     }
 
@@ -24,29 +32,39 @@ public class SquareVenue implements Venue {
         return this.seatingFragments;
     }
 
-    private Double linearDistanceFromIdealizedSeat(int seatRow, int seatIndex, int idealRow, int idealSeatIndex) {
-        return Math.sqrt(Math.pow((seatRow - idealRow), 2) + Math.pow((seatIndex - idealSeatIndex), 2));
+    @Override
+    public List<SeatingRow> getSeatingRows() {
+        return this.seatingRows;
+    }
+
+    @Override
+    public SeatCostFunction getSeatCostFunction() {
+        return this.seatCostFunction;
     }
 
     public SquareVenue(int rows, int seatsPerRow, int idealRow, int idealSeatIndex) {
-        this.seatingFragments = new ArrayList<SeatingFragment>(rows);
+        this(rows, seatsPerRow, SeatCostFunction.distanceFrom(idealRow, idealSeatIndex));
+    }
+
+    public SquareVenue(int rows, int seatsPerRow, SeatCostFunction seatCostFunction) {
+        List<SeatingRow> venueRows = new ArrayList<SeatingRow>(rows);
+        List<SeatingFragment> venueFragments = new ArrayList<SeatingFragment>(rows);
+        double[] rowCosts = new double[seatsPerRow];
         for (int seatRow = 0; seatRow < rows; seatRow++) {
-            ArrayList<Seat> rowOfSeats = new ArrayList<Seat>(seatsPerRow);
-            for (int seatIndex = 0; seatIndex < seatsPerRow; seatIndex++) {
-                Double seatValue = linearDistanceFromIdealizedSeat(seatRow, seatIndex, idealRow, idealSeatIndex);
-                Seat aSeat = new Seat(seatRow, seatIndex, seatValue);
-                rowOfSeats.add(aSeat);
-            }
-            this.seatingFragments.add(new SeatingFragment(rowOfSeats));
+            //the row keeps a copy, one scratch array does for every row
+            seatCostFunction.rowCosts(seatRow, rowCosts);
+            SeatingRow row = new SeatingRow(seatRow, 0, rowCosts);
+            venueRows.add(row);
+            venueFragments.add(row.asFragment());
         }
+        this.seatingRows = Collections.unmodifiableList(venueRows);
+        this.seatingFragments = Collections.unmodifiableList(venueFragments);
+        this.seatCostFunction = seatCostFunction;
     }
 
     public Optional<Double> getSeatValue(int blockIndex, int seatIndex) {
-        //getting rid of empty optionals from the list is clumsy in java 8, compared to scala
-        Optional<Double> optionalSeatValue = this.seatingFragments.stream()
-                .map(sf -> sf.getSeatValue(blockIndex, seatIndex))
-                .flatMap(possibleAnswer -> possibleAnswer.isPresent() ? Stream.of(possibleAnswer.get()): Stream.empty()).findFirst();
-        return optionalSeatValue;
+        OptionalDouble seatCost = getSeatCost(Seat.seatId(blockIndex, seatIndex));
+        return seatCost.isPresent() ? Optional.of(seatCost.getAsDouble()) : Optional.empty();
     }
 
 }
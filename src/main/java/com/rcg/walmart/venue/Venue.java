@@ -1,10 +1,28 @@
 package com.rcg.walmart.venue;
 
+import com.rcg.walmart.seating.Seat;
 import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
 
 import java.util.List;
+import java.util.OptionalDouble;
 
 public interface Venue {
     int numSeatsAvailable();
     List<SeatingFragment> getSeatingFragments();
+    List<SeatingRow> getSeatingRows();
+    //the cost model the rows' seat costs were computed with
+    SeatCostFunction getSeatCostFunction();
+
+    /* the cost of the seat, empty for a seat the venue does not have */
+    default OptionalDouble getSeatCost(long seatId) {
+        int blockIndex = Seat.blockNumberOf(seatId);
+        int seatNumber = Seat.seatNumberOf(seatId);
+        List<SeatingRow> seatingRows = getSeatingRows();
+        if (blockIndex < 0 || blockIndex >= seatingRows.size()) {
+            return OptionalDouble.empty();
+        }
+        SeatingRow row = seatingRows.get(blockIndex);
+        return row.containsSeat(seatNumber) ? OptionalDouble.of(row.getSeatCost(seatNumber)) : OptionalDouble.empty();
+    }
 }
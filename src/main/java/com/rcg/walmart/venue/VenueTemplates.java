@@ -0,0 +1,36 @@
+package com.rcg.walmart.venue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Venues are immutable, their rows of seat costs are shared by every event held in them.  Building one computes the
+ * cost of every seat, so events in the same layout take the one built first from here instead of each building its
+ * own; an event then only adds the seats taken by its holds.
+ */
+public final class VenueTemplates {
+    private static final ConcurrentHashMap<List<Object>, SquareVenue> SQUARE_VENUES =
+            new ConcurrentHashMap<List<Object>, SquareVenue>();
+
+    private VenueTemplates() {
+    }
+
+    /* the square venue of the given layout, built on first use */
+    public static SquareVenue square(int rows, int seatsPerRow, int idealRow, int idealSeatIndex) {
+        return square(rows, seatsPerRow, SeatCostFunction.distanceFrom(idealRow, idealSeatIndex));
+    }
+
+    /**
+     * The square venue of the given size and cost model.  Only venues costed by distance from an ideal seat are kept
+     * and shared, any other cost function gets a venue of its own: a lambda is never equal to another, caching its
+     * venue would keep one more venue for every call.
+     */
+    public static SquareVenue square(int rows, int seatsPerRow, SeatCostFunction seatCostFunction) {
+        if (!(seatCostFunction instanceof DistanceFromIdealSeat)) {
+            return new SquareVenue(rows, seatsPerRow, seatCostFunction);
+        }
+        return SQUARE_VENUES.computeIfAbsent(Arrays.asList(rows, seatsPerRow, seatCostFunction),
+                layout -> new SquareVenue(rows, seatsPerRow, seatCostFunction));
+    }
+}
@@ -3,22 +3,60 @@ package com.rcg.walmart.controller;
 import org.junit.*;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@AutoConfigureMockMvc
 public class ControllerTest {
+    @Autowired
+    private MockMvc mvc;
+
     @Test
     public void shouldDirectToReadme() throws Exception{
     }
 
+    @Test
+    public void testHoldsAreListedAPageAtATime() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            MvcResult hold = mvc.perform(post("/event/main_event/hold/2").content("lister@domain.com"))
+                    .andExpect(request().asyncStarted()).andReturn();
+            mvc.perform(asyncDispatch(hold)).andExpect(status().isOk());
+        }
+        MvcResult page = mvc.perform(get("/event/main_event/holds").param("limit", "2")
+                .param("email", "lister@domain.com").param("status", "HELD"))
+                .andExpect(request().asyncStarted()).andReturn();
+        //the body is written out while the request is in its async phase
+        page.getAsyncResult();
+        String json = page.getResponse().getContentAsString();
+        assertThat(json, containsString("\"status\":\"HELD\""));
+        assertThat(json, containsString("\"seats\":[{\"blockIndex\":"));
+        assertThat(json, not(containsString("\"next\":null")));
+    }
+
+    @Test
+    public void testEmptyPagesAreRefused() throws Exception {
+        mvc.perform(get("/event/main_event/holds").param("limit", "0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testHoldsOfAnUnknownEventAreNotFound() throws Exception {
+        mvc.perform(get("/event/no_such_event/holds")).andExpect(status().isNotFound());
+    }
 }
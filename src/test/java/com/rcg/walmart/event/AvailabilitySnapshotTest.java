@@ -0,0 +1,128 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AvailabilitySnapshotTest {
+    private static final String EMAIL = "name@domain.com";
+    private SquareVenue venue;
+    private EventService event;
+
+    @Before
+    public void setup() {
+        venue = new SquareVenue(4, 10, 0, 5);
+        event = new EventService("snapshot_event", venue.getSeatingFragments(), new ArrayList<SeatHold>());
+    }
+
+    private SeatingFragment seats(int row, int startIndex, int endIndex) {
+        return venue.getSeatingRows().get(row).asFragment().subFragment(startIndex, endIndex);
+    }
+
+    private static int freeSeats(AvailabilitySnapshot snapshot) {
+        return snapshot.fragmentsInRowOrder().stream().mapToInt(SeatingFragment::getSize).sum();
+    }
+
+    @Test
+    public void testEveryChangePublishesANewVersion() {
+        AvailabilitySnapshot before = event.getAvailability();
+        assertEquals(0, before.getVersion());
+        assertEquals(40, before.getSeatsAvailable());
+
+        SeatHold hold = event.createSeatHold(Arrays.asList(seats(0, 2, 4), seats(3, 0, 9)), EMAIL, 10).get();
+        AvailabilitySnapshot held = event.getAvailability();
+        assertEquals(1, held.getVersion());
+        assertEquals(27, held.getSeatsAvailable());
+        assertEquals(13, held.getSeatsHeld());
+        assertEquals(27, freeSeats(held));
+        //both blocks of the hold came out in the one version, and the earlier version is as it was
+        assertEquals(2, held.getFreeSeatRanges().get(0).size());
+        assertArrayEquals(new int[]{0, 1}, held.getFreeSeatRanges().get(0).get(0));
+        assertArrayEquals(new int[]{5, 9}, held.getFreeSeatRanges().get(0).get(1));
+        assertFalse(held.getFreeSeatRanges().containsKey(3));
+        assertEquals(40, freeSeats(before));
+        assertEquals(4, before.getFreeSeatRanges().size());
+
+        event.confirmSeatHold(hold.getSeatHoldId(), EMAIL);
+        AvailabilitySnapshot confirmed = event.getAvailability();
+        assertEquals(2, confirmed.getVersion());
+        assertEquals(0, confirmed.getSeatsHeld());
+        assertEquals(13, confirmed.getSeatsReserved());
+        assertEquals(held.fragmentsInRowOrder(), confirmed.fragmentsInRowOrder());
+    }
+
+    @Test
+    public void testExpiredSeatsCoalesceAsInTheIndex() {
+        event.createSeatHold(Collections.singletonList(seats(1, 3, 5)), EMAIL, 10);
+        event.createSeatHold(Collections.singletonList(seats(1, 6, 6)), EMAIL, 20);
+        event.createSeatHold(Collections.singletonList(seats(2, 0, 9)), EMAIL, 10);
+        event.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMinutes(15)));
+        event.removeStaleSeatHolds();
+
+        AvailabilitySnapshot expired = event.getAvailability();
+        assertEquals(5, expired.getVersion());
+        assertEquals(39, expired.getSeatsAvailable());
+        assertEquals(1, expired.getSeatsHeld());
+        assertEquals(event.getAvailableFragmentIndex().inRowOrder().toString(), expired.fragmentsInRowOrder().toString());
+        //searches over the version see what they would see in the index
+        FreeFragmentIndex index = event.getAvailableFragmentIndex();
+        assertEquals(index.largestFirst().toString(), expired.largestFirst().toString());
+        assertEquals(index.atLeast(4).toString(), expired.atLeast(4).toString());
+        for (int numSeats = 1; numSeats <= 11; numSeats++) {
+            assertEquals(index.cheapestBlock(numSeats).toString(), expired.cheapestBlock(numSeats).toString());
+        }
+    }
+
+    @Test
+    public void testReadersNeverSeeATornState() throws InterruptedException {
+        SquareVenue large = new SquareVenue(50, 50, 0, 25);
+        EventService busy = new EventService("busy_event", large.getSeatingFragments(), new ArrayList<SeatHold>());
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        AtomicBoolean torn = new AtomicBoolean();
+        for (int writer = 0; writer < 4; writer++) {
+            int firstRow = writer;
+            writers.submit(() -> {
+                for (int row = firstRow; row < 50; row += 4) {
+                    for (int seat = 0; seat < 50; seat += 5) {
+                        //two rows at a time, so a reader catching one without the other would be torn
+                        busy.createSeatHold(Arrays.asList(
+                                large.getSeatingRows().get(row).asFragment().subFragment(seat, seat + 2),
+                                large.getSeatingRows().get(49 - row).asFragment().subFragment(seat + 3, seat + 4)),
+                                EMAIL, 10);
+                    }
+                }
+            });
+        }
+        writers.shutdown();
+        long lastVersion = -1;
+        while (!writers.isTerminated()) {
+            AvailabilitySnapshot snapshot = busy.getAvailability();
+            if (freeSeats(snapshot) != snapshot.getSeatsAvailable()
+                    || snapshot.getSeatsAvailable() + snapshot.getSeatsHeld() != 2500
+                    || snapshot.getVersion() < lastVersion) {
+                torn.set(true);
+            }
+            lastVersion = snapshot.getVersion();
+        }
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(torn.get());
+        assertEquals(busy.getAvailableFragmentIndex().size(), busy.getAvailability().fragmentsInRowOrder().size());
+        assertEquals(busy.currentSeatHolds().stream().flatMap(seatHold -> seatHold.getSeatingFragments().stream())
+                .mapToInt(SeatingFragment::getSize).sum(), busy.getAvailability().getSeatsHeld());
+    }
+}
@@ -0,0 +1,136 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class EventCommandPipelineTest {
+    private static final String EVENT_ID = "VENUE_1_DATE_20180231";
+    private EventService event;
+    private EventCommandPipeline unit;
+
+    @Before
+    public void setup() {
+        event = new EventService(EVENT_ID, new SquareVenue(10, 10, 0, 5).getSeatingFragments(), new ArrayList<SeatHold>());
+        unit = new EventCommandPipeline(event, 16, 4);
+    }
+
+    @After
+    public void tearDown() {
+        unit.close();
+    }
+
+    @Test
+    public void testCommandsAppliedInSubmitOrder() throws Exception {
+        SeatingFragment frontRow = event.getAvailableSeatingFragments().get(0).subFragment(0, 3);
+        CompletableFuture<Optional<SeatHold>> first = unit.createSeatHold(Collections.singletonList(frontRow), "first@example.com", 10);
+        CompletableFuture<Optional<SeatHold>> second = unit.createSeatHold(Collections.singletonList(frontRow), "second@example.com", 10);
+
+        assertTrue(first.get(5, TimeUnit.SECONDS).isPresent());
+        assertFalse("the seats went to whoever was submitted first", second.get(5, TimeUnit.SECONDS).isPresent());
+        assertEquals(96, event.totalSeatsAvailable());
+
+        SeatHold hold = first.get().get();
+        assertTrue(unit.confirmSeatHold(hold.getSeatHoldId(), "first@example.com").get(5, TimeUnit.SECONDS).isPresent());
+        assertEquals(4, event.totalSeatsReserved());
+    }
+
+    @Test
+    public void testCommandsRunOnTheWriterThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        Thread writer = unit.submit(e -> Thread.currentThread()).get(5, TimeUnit.SECONDS);
+        assertNotSame(caller, writer);
+        assertEquals("event-writer-" + EVENT_ID, writer.getName());
+        assertSame(writer, unit.submit(e -> Thread.currentThread()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullRingRejects() throws Exception {
+        CountDownLatch blockWriter = new CountDownLatch(1);
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        unit.submit(e -> {
+            writerBusy.countDown();
+            try {
+                blockWriter.await();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        writerBusy.await();
+        List<CompletableFuture<Void>> queued = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 16; i++) {
+            queued.add(unit.removeStaleSeatHolds());
+        }
+        CompletableFuture<Void> overflow = unit.removeStaleSeatHolds();
+        assertTrue(overflow.isCompletedExceptionally());
+        blockWriter.countDown();
+        for (CompletableFuture<Void> command : queued) {
+            command.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testFailingCommandDoesNotStopTheWriter() throws Exception {
+        CompletableFuture<Object> failing = unit.submit(e -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("command should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(EVENT_ID, unit.submit(EventService::getEventId).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCommandThrowingAnErrorDoesNotStopTheWriter() throws Exception {
+        CompletableFuture<Object> failing = unit.submit(e -> {
+            throw new AssertionError("boom");
+        });
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("command should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        assertEquals(EVENT_ID, unit.submit(EventService::getEventId).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualMachineErrorStopsTheWriter() throws Exception {
+        CompletableFuture<Object> failing = unit.submit(e -> {
+            throw new StackOverflowError();
+        });
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("command should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+        try {
+            unit.submit(EventService::getEventId).get(5, TimeUnit.SECONDS);
+            fail("the writer should have stopped");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testClosedPipelineRejects() {
+        unit.close();
+        assertTrue(unit.removeStaleSeatHolds().isCompletedExceptionally());
+    }
+}
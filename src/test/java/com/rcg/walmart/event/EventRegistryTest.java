@@ -0,0 +1,210 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventRegistryTest {
+    private static final String EMAIL = "name@domain.com";
+    private EventRegistry unit;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        //room for two of the 100 seat events at a time
+        unit = new EventRegistry(250);
+        unit.register("a", new SquareVenue(10, 10, 0, 5));
+        unit.register("b", new SquareVenue(10, 10, 0, 5));
+        unit.register("c", new SquareVenue(10, 10, 0, 5));
+    }
+
+    private static SeatHold hold(EventService event, int numSeats) {
+        SeatingFragment frontRow = event.getAvailableSeatingFragments().get(0);
+        return event.createSeatHold(Collections.singletonList(frontRow.subFragment(frontRow.getStartIndex(),
+                frontRow.getStartIndex() + numSeats - 1)), EMAIL, 10).get();
+    }
+
+    @Test
+    public void testEventsAreBuiltOnFirstUse() {
+        assertEquals(Arrays.asList("a", "b", "c", EventService.DEFAULT_EVENT_ID), unit.getEventIds());
+        assertFalse(unit.isResident("a"));
+        try (EventHandle a = unit.open("a").get()) {
+            assertEquals("a", a.getEventService().getEventId());
+            assertEquals(100, a.getEventService().totalSeatsAvailable());
+        }
+        assertTrue(unit.isResident("a"));
+        assertEquals(100, unit.getResidentSeats());
+        assertFalse(unit.open("unknown").isPresent());
+    }
+
+    @Test
+    public void testEventsHaveStateOfTheirOwn() {
+        try (EventHandle a = unit.open("a").get(); EventHandle b = unit.open("b").get()) {
+            hold(a.getEventService(), 4);
+            assertEquals(96, a.getEventService().totalSeatsAvailable());
+            assertEquals(100, b.getEventService().totalSeatsAvailable());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEventIsEvicted() {
+        unit.open("a").get().close();
+        unit.open("b").get().close();
+        unit.open("a").get().close();
+        unit.open("c").get().close();
+        assertTrue(unit.isResident("a"));
+        assertFalse(unit.isResident("b"));
+        assertTrue(unit.isResident("c"));
+        assertEquals(200, unit.getResidentSeats());
+    }
+
+    @Test
+    public void testEventsInUseOrWithHoldsStayResident() {
+        EventHandle a = unit.open("a").get();
+        try (EventHandle b = unit.open("b").get()) {
+            hold(b.getEventService(), 2);
+        }
+        unit.open("c").get().close();
+        //a is pinned and b has a hold running, going over budget is the lesser evil
+        assertTrue(unit.isResident("a"));
+        assertTrue(unit.isResident("b"));
+        assertTrue(unit.isResident("c"));
+        a.close();
+        assertEquals(1, unit.evictColdEvents());
+        assertFalse(unit.isResident("a"));
+    }
+
+    @Test
+    public void testReservationsSurviveEviction() {
+        SeatHold reservation;
+        try (EventHandle a = unit.open("a").get()) {
+            reservation = hold(a.getEventService(), 3);
+            assertTrue(a.getEventService().confirmSeatHold(reservation.getSeatHoldId(), EMAIL).isPresent());
+        }
+        unit.open("b").get().close();
+        unit.open("c").get().close();
+        assertFalse(unit.isResident("a"));
+
+        try (EventHandle a = unit.open("a").get()) {
+            EventService rebuilt = a.getEventService();
+            assertEquals(97, rebuilt.totalSeatsAvailable());
+            assertEquals(3, rebuilt.totalSeatsReserved());
+            Optional<SeatHold> found = rebuilt.getSeatHold(reservation.getSeatHoldId(), EMAIL);
+            assertTrue(found.isPresent());
+            assertTrue(found.get().isReservation());
+            //the reserved seats are not handed out again
+            assertFalse(rebuilt.createSeatHold(reservation.getSeatingFragments(), EMAIL, 10).isPresent());
+        }
+    }
+
+    @Test
+    public void testRegistryOfOneEvent() {
+        EventService event = new EventService();
+        EventRegistry single = EventRegistry.of(event);
+        assertEquals(Collections.singletonList(event.getEventId()), single.getEventIds());
+        try (EventHandle handle = single.open(event.getEventId()).get()) {
+            assertSame(event, handle.getEventService());
+        }
+        assertEquals(0, single.evictColdEvents());
+    }
+
+    @Test
+    public void testJournaledEventsSurviveARestart() {
+        String journalDirectory = folder.getRoot().getPath();
+        SeatHold reservation;
+        SeatHold held;
+        EventRegistry firstRun = new EventRegistry(250, journalDirectory);
+        firstRun.register("a", new SquareVenue(10, 10, 0, 5));
+        try (EventHandle a = firstRun.open("a").get()) {
+            reservation = hold(a.getEventService(), 3);
+            assertTrue(a.getEventService().confirmSeatHold(reservation.getSeatHoldId(), EMAIL).isPresent());
+            held = hold(a.getEventService(), 2);
+        }
+        firstRun.close();
+
+        EventRegistry secondRun = new EventRegistry(250, journalDirectory);
+        secondRun.register("a", new SquareVenue(10, 10, 0, 5));
+        try (EventHandle a = secondRun.open("a").get()) {
+            EventService rebuilt = a.getEventService();
+            assertEquals(95, rebuilt.totalSeatsAvailable());
+            assertEquals(3, rebuilt.totalSeatsReserved());
+            assertEquals(reservation.getConfirmationCode(),
+                    rebuilt.getSeatHold(reservation.getSeatHoldId(), EMAIL).get().getConfirmationCode());
+            assertTrue(rebuilt.getSeatHold(held.getSeatHoldId(), EMAIL).get().isHold());
+            //holds taken after the restart are numbered after the ones read back
+            assertTrue(hold(rebuilt, 1).getSeatHoldId() > held.getSeatHoldId());
+        }
+        secondRun.close();
+    }
+
+    @Test
+    public void testEventWhoseJournalFailsToCloseIsStillEvicted() throws Exception {
+        EventRegistry failingJournals = new EventRegistry(250, folder.getRoot().getPath()) {
+            @Override
+            EventJournal openJournal(Path directory, EventService eventService) throws IOException {
+                EventJournal journal = super.openJournal(directory, eventService);
+                return new EventJournal() {
+                    public void held(SeatHold seatHold) {
+                        journal.held(seatHold);
+                    }
+
+                    public void confirmed(SeatHold seatHold) {
+                        journal.confirmed(seatHold);
+                    }
+
+                    public void expired(SeatHold seatHold) {
+                        journal.expired(seatHold);
+                    }
+
+                    public void close() {
+                        journal.close();
+                        throw new UncheckedIOException(new IOException("disk gone"));
+                    }
+                };
+            }
+        };
+        failingJournals.register("a", new SquareVenue(10, 10, 0, 5));
+        failingJournals.register("b", new SquareVenue(10, 10, 0, 5));
+        failingJournals.register("c", new SquareVenue(10, 10, 0, 5));
+        failingJournals.open("a").get().close();
+        failingJournals.open("b").get().close();
+        //going over the budget evicts a, whose journal fails to close
+        failingJournals.open("c").get().close();
+        assertFalse(failingJournals.isResident("a"));
+        assertEquals(200, failingJournals.getResidentSeats());
+
+        CompletableFuture<Optional<EventHandle>> reopened = CompletableFuture.supplyAsync(() -> failingJournals.open("a"));
+        try (EventHandle a = reopened.get(5, TimeUnit.SECONDS).get()) {
+            assertEquals(100, a.getEventService().totalSeatsAvailable());
+        }
+    }
+
+    @Test
+    public void testLayoutsRegisterEvents() throws IOException {
+        Path venues = folder.newFolder("venues").toPath();
+        Files.write(venues.resolve("arena.layout"), "level lower\nrow A 10\nrow B 12 first -1\n".getBytes());
+        Files.write(venues.resolve("notes.txt"), "not a layout".getBytes());
+        assertEquals(Collections.singletonList("arena"), unit.registerLayouts(venues));
+        try (EventHandle arena = unit.open("arena").get()) {
+            assertEquals(22, arena.getEventService().totalSeatsAvailable());
+        }
+    }
+}
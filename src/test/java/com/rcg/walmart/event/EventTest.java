@@ -1,6 +1,7 @@
 package com.rcg.walmart.event;
 
 import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seathold.SeatHoldQuery;
 import com.rcg.walmart.seating.Seat;
 import com.rcg.walmart.seating.SeatingFragment;
 import org.junit.Before;
@@ -40,7 +41,7 @@ public class EventTest {
         List<Seat> seats = unit.getAvailableSeats();
         int reserveTheseSeats = 2;
         assertEquals(3, seats.size());
-        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber().equals(DEFAULT_BLOCK_INDEX) && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
+        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber() == DEFAULT_BLOCK_INDEX && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
         Optional<SeatHold> hold = unit.createSeatHold(Arrays.asList(new SeatingFragment(goingToReserveTheseSeats)), "", 10);
         assertTrue(hold.isPresent());
         assertEquals(1, hold.get().getSeatingFragments().size());
@@ -63,7 +64,7 @@ public class EventTest {
 
         List<Seat> seats = unit.getAvailableSeats();
         List<Integer> reserveTheseSeats = Arrays.asList(2, 3);
-        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber().equals(DEFAULT_BLOCK_INDEX) &&
+        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber() == DEFAULT_BLOCK_INDEX &&
                 reserveTheseSeats.contains(s.getSeatNumber())).collect(Collectors.toList());
         assertEquals(2, goingToReserveTheseSeats.size());
         assertEquals(1, unit.getAvailableSeatingFragments().size());
@@ -101,7 +102,7 @@ public class EventTest {
 
         List<Seat> seats = unit.getAvailableSeats();
         List<Integer> reserveTheseSeats = Arrays.asList(2);
-        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber().equals(DEFAULT_BLOCK_INDEX) &&
+        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber() == DEFAULT_BLOCK_INDEX &&
                 reserveTheseSeats.contains(s.getSeatNumber())).collect(Collectors.toList());
         assertEquals(1, goingToReserveTheseSeats.size());
         assertEquals(1, unit.getAvailableSeatingFragments().size());
@@ -127,13 +128,39 @@ public class EventTest {
 
         List<Seat> seats = unit.getAvailableSeats();
         int reserveTheseSeats = 2;
-        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber().equals(DEFAULT_BLOCK_INDEX) && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
+        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber() == DEFAULT_BLOCK_INDEX && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
         Optional<SeatHold> hold = unit.createSeatHold(Arrays.asList(new SeatingFragment(goingToReserveTheseSeats)), EMAIL, 10);
         assertTrue(hold.isPresent());
         Optional<String> confirmation = unit.confirmSeatHold(hold.get().getSeatHoldId(), EMAIL);
         assertTrue(confirmation.isPresent());
     }
 
+    @Test
+    public void testSeatCountsFollowHoldConfirmAndExpiry() {
+        String EMAIL = "someone@domain.com";
+        List<Seat> seats = unit.getAvailableSeats();
+        Optional<SeatHold> confirmed = unit.createSeatHold(Arrays.asList(new SeatingFragment(seats.subList(0, 1))), EMAIL, 10);
+        Optional<SeatHold> held = unit.createSeatHold(Arrays.asList(new SeatingFragment(seats.subList(1, 3))), EMAIL, 10);
+        assertTrue(confirmed.isPresent());
+        assertTrue(held.isPresent());
+        assertTrue(unit.confirmSeatHold(confirmed.get().getSeatHoldId(), EMAIL).isPresent());
+        assertEquals(0, unit.totalSeatsAvailable());
+        assertEquals(2, unit.totalSeatsHeld());
+        assertEquals(1, unit.totalSeatsReserved());
+
+        Clock clock = mock(Clock.class);
+        doReturn(Instant.now().plus(Duration.ofHours(1))).when(clock).instant();
+        doReturn(ZoneOffset.UTC).when(clock).getZone();
+        unit.setClock(clock);
+        //reading the counts does not sweep, they change once the lapsed hold is swept
+        assertEquals(2, unit.totalSeatsHeld());
+        unit.removeStaleSeatHolds();
+
+        assertEquals(2, unit.totalSeatsAvailable());
+        assertEquals(0, unit.totalSeatsHeld());
+        assertEquals(1, unit.totalSeatsReserved());
+    }
+
     @Test
     public void testFailConfirmWithWrongEmail() {
         String EMAIL = "someone@domain.com";
@@ -141,11 +168,26 @@ public class EventTest {
 
         List<Seat> seats = unit.getAvailableSeats();
         int reserveTheseSeats = 2;
-        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber().equals(DEFAULT_BLOCK_INDEX) && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
+        List<Seat> goingToReserveTheseSeats = seats.stream().filter(s -> s.getBlockNumber() == DEFAULT_BLOCK_INDEX && s.getSeatNumber() == reserveTheseSeats).collect(Collectors.toList());
         Optional<SeatHold> hold = unit.createSeatHold(Arrays.asList(new SeatingFragment(goingToReserveTheseSeats)), EMAIL, 10);
         assertTrue(hold.isPresent());
         Optional<String> confirmation = unit.confirmSeatHold(hold.get().getSeatHoldId(), EMAIL2);
         assertTrue(!confirmation.isPresent());
     }
 
+
+    @Test
+    public void testVisitLeavesOutHoldsWhoseTimeIsUp() {
+        List<Seat> seats = unit.getAvailableSeats();
+        SeatHold shortHold = unit.createSeatHold(Arrays.asList(new SeatingFragment(seats.subList(0, 1))), "", 1).get();
+        SeatHold longHold = unit.createSeatHold(Arrays.asList(new SeatingFragment(seats.subList(1, 2))), "", 10).get();
+        unit.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMinutes(5)));
+
+        List<SeatHold> visited = new ArrayList<SeatHold>();
+        assertFalse(unit.visitSeatHolds(SeatHoldQuery.ALL, 0, 10, visited::add).isPresent());
+        assertEquals(Arrays.asList(longHold), visited);
+        //listing does not sweep, the expired hold is still there until the next sweep
+        assertEquals(2, unit.currentSeatHolds().size());
+        assertTrue(unit.getSeatHold(shortHold.getSeatHoldId(), "").isPresent());
+    }
 }
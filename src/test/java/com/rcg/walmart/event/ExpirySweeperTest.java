@@ -0,0 +1,34 @@
+package com.rcg.walmart.event;
+
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ExpirySweeperTest {
+
+    @Test
+    public void testLapsedHoldsAreGivenBackWithoutAnyoneAsking() throws InterruptedException {
+        SquareVenue venue = new SquareVenue(2, 10, 0, 5);
+        EventService event = new EventService("quiet_event", venue.getSeatingFragments(), new ArrayList<SeatHold>());
+        event.createSeatHold(Collections.singletonList(venue.getSeatingRows().get(0).asFragment().subFragment(0, 3)),
+                "name@domain.com", 10);
+        event.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMinutes(15)));
+        assertEquals(16, event.totalSeatsAvailable());
+
+        try (ExpirySweeper unit = new ExpirySweeper(event, 5)) {
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (event.totalSeatsAvailable() != 20 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(20, event.totalSeatsAvailable());
+        assertEquals(0, event.totalSeatsHeld());
+    }
+}
@@ -4,13 +4,22 @@ import com.rcg.walmart.locking.Lock;
 import com.rcg.walmart.locking.SimpleLockService;
 import org.junit.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.*;
 
 import java.time.*;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SimpleLockServiceTest {
     private static String lock1 = "lock1";
@@ -85,4 +94,106 @@ public class SimpleLockServiceTest {
         assertFalse(unit.releaseLock(bogusLock));
 
     }
+
+    @Test
+    public void testAcquireLocksInOrder() {
+        SimpleLockService unit = new SimpleLockService();
+        Optional<List<Lock>> result = unit.acquireLocks(Arrays.asList(lock2, lock1, lock2), Duration.ZERO);
+        assertTrue(result.isPresent());
+        assertEquals(Arrays.asList(lock1, lock2), result.get().stream().map(Lock::getLockId).collect(Collectors.toList()));
+
+        assertTrue(unit.releaseLocks(result.get()));
+        assertTrue(unit.acquireLock(lock1).isPresent());
+    }
+
+    @Test
+    public void testAcquireLocksTimesOutAndLetsGo() {
+        SimpleLockService unit = new SimpleLockService();
+        assertTrue(unit.acquireLock(lock2).isPresent());
+
+        Optional<List<Lock>> result = unit.acquireLocks(Arrays.asList(lock1, lock2), Duration.ofMillis(20));
+        assertFalse(result.isPresent());
+        //the lock taken before running out of time was handed back
+        assertTrue(unit.acquireLock(lock1).isPresent());
+    }
+
+    @Test
+    public void testAcquireLocksWaitsForRelease() throws Exception {
+        SimpleLockService unit = new SimpleLockService();
+        Lock held = unit.acquireLock(lock1).get();
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            unit.releaseLock(held);
+        });
+        releaser.start();
+
+        Optional<List<Lock>> result = unit.acquireLocks(Arrays.asList(lock1, lock2), Duration.ofSeconds(5));
+        releaser.join();
+        assertTrue(result.isPresent());
+        assertEquals(2, result.get().size());
+    }
+
+    @Test
+    public void testAsyncWaitersServedInOrder() throws Exception {
+        SimpleLockService unit = new SimpleLockService();
+        Lock held = unit.acquireLock(lock1).get();
+        CompletableFuture<Lock> first = unit.acquireLockAsync(lock1, Duration.ofSeconds(5));
+        CompletableFuture<Lock> second = unit.acquireLockAsync(lock1, Duration.ofSeconds(5));
+        assertFalse(first.isDone());
+        //queued callers go ahead of anyone trying their luck without waiting
+        assertFalse(unit.acquireLock(lock1).isPresent());
+
+        unit.releaseLock(held);
+        Lock firstLock = first.get(1, TimeUnit.SECONDS);
+        assertFalse(second.isDone());
+
+        unit.releaseLock(firstLock);
+        assertEquals(lock1, second.get(1, TimeUnit.SECONDS).getLockId());
+    }
+
+    @Test
+    public void testAsyncWaiterTimesOut() throws Exception {
+        SimpleLockService unit = new SimpleLockService();
+        Lock held = unit.acquireLock(lock1).get();
+        CompletableFuture<Lock> waiter = unit.acquireLockAsync(lock1, Duration.ofMillis(20));
+        try {
+            waiter.get(5, TimeUnit.SECONDS);
+            fail("lock was never released");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        //the timed out caller left the queue
+        unit.releaseLock(held);
+        assertTrue(unit.acquireLock(lock1).isPresent());
+    }
+
+    @Test
+    public void testCancelledWaiterIsSkipped() throws Exception {
+        SimpleLockService unit = new SimpleLockService();
+        Lock held = unit.acquireLock(lock1).get();
+        CompletableFuture<Lock> cancelled = unit.acquireLockAsync(lock1, Duration.ofSeconds(5));
+        CompletableFuture<Lock> next = unit.acquireLockAsync(lock1, Duration.ofSeconds(5));
+        cancelled.cancel(false);
+
+        unit.releaseLock(held);
+        assertEquals(lock1, next.get(1, TimeUnit.SECONDS).getLockId());
+    }
+
+    @Test
+    public void testCancelledMultiLockRequestLetsGo() {
+        SimpleLockService unit = new SimpleLockService();
+        Lock held = unit.acquireLock(lock2).get();
+        CompletableFuture<List<Lock>> pending = unit.acquireLocksAsync(Arrays.asList(lock1, lock2), Duration.ofSeconds(5));
+        assertFalse(pending.isDone());
+        pending.cancel(false);
+
+        //lock1 was taken while waiting on lock2 and handed back on cancel
+        assertTrue(unit.acquireLock(lock1).isPresent());
+        unit.releaseLock(held);
+        assertTrue(unit.acquireLock(lock2).isPresent());
+    }
 }
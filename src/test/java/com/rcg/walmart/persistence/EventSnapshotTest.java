@@ -0,0 +1,97 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class EventSnapshotTest {
+    private static final String EMAIL = "name@domain.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private SquareVenue venue;
+    private EventService event;
+    private Path file;
+
+    @Before
+    public void setup() {
+        //wider than a bitset word, so rows span several words
+        venue = new SquareVenue(4, 150, 0, 75);
+        event = new EventService("snapshot_event", venue.getSeatingFragments(), new ArrayList<SeatHold>());
+        file = folder.getRoot().toPath().resolve("event.snapshot");
+    }
+
+    private SeatHold hold(int row, int startIndex, int endIndex) {
+        SeatingFragment fragment = venue.getSeatingRows().get(row).asFragment().subFragment(startIndex, endIndex);
+        return event.createSeatHold(Collections.singletonList(fragment), EMAIL, 10).get();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        SeatHold reserved = hold(0, 60, 70);
+        hold(1, 0, 149);
+        SeatHold held = hold(2, 127, 129);
+        assertTrue(event.confirmSeatHold(reserved.getSeatHoldId(), EMAIL).isPresent());
+
+        EventSnapshot.write(event, file);
+        EventService loaded = EventSnapshot.read(file);
+
+        assertEquals("snapshot_event", loaded.getEventId());
+        assertEquals(event.totalSeatsAvailable(), loaded.totalSeatsAvailable());
+        assertEquals(event.totalSeatsHeld(), loaded.totalSeatsHeld());
+        assertEquals(event.totalSeatsReserved(), loaded.totalSeatsReserved());
+        assertEquals(event.getAvailableSeatingFragments().toString(), loaded.getAvailableSeatingFragments().toString());
+        assertEquals(reserved.getConfirmationCode(),
+                loaded.getSeatHold(reserved.getSeatHoldId(), EMAIL).get().getConfirmationCode());
+        //the seat costs come from the file, not from a venue
+        SeatingFragment lastRow = loaded.getAvailableSeatingFragments().stream()
+                .filter(fragment -> fragment.getBlockIndex() == 3).findFirst().get();
+        assertEquals(venue.getSeatValue(3, 17).get(), lastRow.getSeatValue(3, 17).get());
+
+        //the taken seats stay taken and the loaded holds can be confirmed
+        SeatingFragment heldSeats = held.getSeatingFragments().get(0);
+        assertFalse(loaded.createSeatHold(Collections.singletonList(heldSeats), EMAIL, 10).isPresent());
+        assertTrue(loaded.confirmSeatHold(held.getSeatHoldId(), EMAIL).isPresent());
+        Optional<SeatHold> neighbor = loaded.createSeatHold(Collections.singletonList(
+                heldSeats.row().asFragment().subFragment(126, 126)), EMAIL, 10);
+        assertTrue(neighbor.isPresent());
+    }
+
+    @Test
+    public void testEmptyEvent() throws IOException {
+        EventSnapshot.write(event, file);
+        EventService loaded = EventSnapshot.read(file);
+        assertEquals(600, loaded.totalSeatsAvailable());
+        assertTrue(loaded.getAllSeatHolds().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws IOException {
+        Files.write(file, "not a snapshot at all".getBytes());
+        EventSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshot() throws IOException {
+        hold(0, 0, 3);
+        EventSnapshot.write(event, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+        EventSnapshot.read(file);
+    }
+}
@@ -0,0 +1,250 @@
+package com.rcg.walmart.persistence;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import com.rcg.walmart.venue.Venue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+public class MappedEventJournalTest {
+    private static final String EMAIL = "name@domain.com";
+    private static final ZonedDateTime HOLD_TIME = ZonedDateTime.of(2018, 2, 20, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Venue venue;
+    private Path directory;
+
+    @Before
+    public void setup() {
+        venue = new SquareVenue(10, 10, 0, 5);
+        directory = folder.getRoot().toPath().resolve("event");
+    }
+
+    private SeatHold hold(int row, int startIndex, int endIndex) {
+        SeatingFragment fragment = venue.getSeatingRows().get(row).asFragment().subFragment(startIndex, endIndex);
+        return new SeatHold(Collections.singletonList(fragment), EMAIL, HOLD_TIME, 10);
+    }
+
+    private EventService newEvent() {
+        return new EventService("event", venue.getSeatingFragments(), new ArrayList<SeatHold>());
+    }
+
+    private SeatHold held(EventService event, int row, int startIndex, int endIndex) {
+        SeatingFragment fragment = venue.getSeatingRows().get(row).asFragment().subFragment(startIndex, endIndex);
+        return event.createSeatHold(Collections.singletonList(fragment), EMAIL, 10).get();
+    }
+
+    private static List<Integer> ids(List<SeatHold> holds) {
+        return holds.stream().map(SeatHold::getSeatHoldId).collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testHoldsConfirmationsAndExpiriesAreReplayed() throws IOException {
+        SeatHold reserved = hold(0, 2, 4);
+        SeatHold expired = hold(1, 0, 1);
+        SeatHold held = hold(2, 5, 5);
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, newEvent())) {
+            journal.held(reserved);
+            journal.held(expired);
+            journal.held(held);
+            assertTrue(reserved.confirmReservation(Clock.fixed(HOLD_TIME.toInstant(), ZoneOffset.UTC)).isPresent());
+            journal.confirmed(reserved);
+            journal.expired(expired);
+        }
+
+        List<SeatHold> replayed = MappedEventJournal.replay(directory, venue);
+        assertEquals(Arrays.asList(reserved.getSeatHoldId(), held.getSeatHoldId()), ids(replayed));
+        SeatHold restored = replayed.get(0);
+        assertTrue(restored.isReservation());
+        assertEquals(reserved.getConfirmationCode(), restored.getConfirmationCode());
+        assertEquals(reserved.getConfirmationTime().toInstant(), restored.getConfirmationTime().toInstant());
+        assertEquals(EMAIL, restored.getEmail());
+        assertEquals(HOLD_TIME.plusMinutes(10).toInstant(), restored.getHoldExpirationTime().toInstant());
+        assertEquals(reserved.getSeatingFragments().toString(), restored.getSeatingFragments().toString());
+        assertTrue(replayed.get(1).isHold());
+    }
+
+    @Test
+    public void testReplayStopsAtATornRecord() throws IOException {
+        SeatHold first = hold(0, 0, 1);
+        SeatHold second = hold(0, 2, 3);
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, newEvent())) {
+            journal.held(first);
+            journal.held(second);
+        }
+        //scribble over the tail of the second record as a crash part way through writing it would leave it
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            long secondRecordEnd = 2 * (HoldRecords.hold(first).remaining());
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), secondRecordEnd - 4);
+        }
+        assertEquals(Collections.singletonList(first.getSeatHoldId()), ids(MappedEventJournal.replay(directory, venue)));
+    }
+
+    @Test
+    public void testSnapshotCompactsTheSegments() throws IOException {
+        EventService event = newEvent();
+        //small segments and a long flush interval, the test takes the snapshot itself
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, event, 256, 1000, 60_000_000)) {
+            event.setJournal(journal);
+            for (int i = 0; i < 10; i++) {
+                held(event, 4, i, i);
+            }
+            SeatHold reserved = held(event, 3, 0, 9);
+            assertTrue(event.confirmSeatHold(reserved.getSeatHoldId(), EMAIL).isPresent());
+            assertTrue(segments().size() > 1);
+
+            journal.snapshot();
+            assertEquals(1, segments().size());
+            //the holds of row 4 expire after the snapshot, their seats come back on recovery
+            event.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMinutes(15)));
+            event.removeStaleSeatHolds();
+            held(event, 5, 0, 0);
+        }
+        List<SeatHold> replayed = MappedEventJournal.replay(directory, venue);
+        assertEquals(ids(event.currentSeatHolds()), ids(replayed));
+        assertTrue(replayed.get(0).isReservation());
+
+        EventService recovered = MappedEventJournal.recover(directory, "event", venue);
+        assertEquals(ids(event.currentSeatHolds()), ids(recovered.currentSeatHolds()));
+        assertEquals(89, recovered.totalSeatsAvailable());
+        assertEquals(event.getAvailableSeatingFragments().toString(), recovered.getAvailableSeatingFragments().toString());
+    }
+
+    @Test
+    public void testCompactionRunsInTheBackground() throws Exception {
+        EventService event = newEvent();
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, event, 256, 2, 1000)) {
+            event.setJournal(journal);
+            for (int i = 0; i < 10; i++) {
+                held(event, 6, i, i);
+                held(event, 7, i, i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!Files.exists(directory.resolve("snapshot.dat")) && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(Files.exists(directory.resolve("snapshot.dat")));
+        }
+        assertEquals(ids(event.currentSeatHolds()), ids(MappedEventJournal.replay(directory, venue)));
+    }
+
+    @Test
+    public void testClosingWaitsForACompactionUnderWay() throws Exception {
+        EventService event = spy(newEvent());
+        MappedEventJournal journal = MappedEventJournal.open(directory, event, 256, 1000, 60_000_000);
+        event.setJournal(journal);
+        for (int i = 0; i < 10; i++) {
+            held(event, 4, i, i);
+        }
+        SeatHold reserved = held(event, 3, 0, 9);
+        assertTrue(event.confirmSeatHold(reserved.getSeatHoldId(), EMAIL).isPresent());
+
+        //the compaction stops part way through writing the snapshot, the event is evicted meanwhile
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWriting = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            finishWriting.await();
+            return invocation.callRealMethod();
+        }).when(event).currentSeatHolds();
+        CompletableFuture<Void> compaction = CompletableFuture.runAsync(() -> {
+            try {
+                journal.snapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> eviction = CompletableFuture.runAsync(journal::close);
+        try {
+            eviction.get(100, TimeUnit.MILLISECONDS);
+            fail("close should wait for the snapshot");
+        } catch (TimeoutException e) {
+            //still writing
+        }
+        finishWriting.countDown();
+        eviction.get(5, TimeUnit.SECONDS);
+        compaction.get(5, TimeUnit.SECONDS);
+
+        //rebuilding straight after the eviction finds the reservation
+        EventService recovered = MappedEventJournal.recover(directory, "event", venue);
+        assertEquals(ids(event.currentSeatHolds()), ids(recovered.currentSeatHolds()));
+        assertTrue(recovered.getSeatHold(reserved.getSeatHoldId(), EMAIL).get().isReservation());
+    }
+
+    @Test
+    public void testFlusherCreatesTheNextSegmentAhead() throws Exception {
+        List<SeatHold> holds = new ArrayList<SeatHold>();
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, newEvent(), 256, 1000, 1000)) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (segments().size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2, segments().size());
+            //fill the first segment, the records after it go on in the one created ahead
+            int recordBytes = HoldRecords.hold(hold(0, 0, 0)).remaining();
+            for (int i = 0; i < 256 / recordBytes + 1; i++) {
+                holds.add(hold(0, i, i));
+                journal.held(holds.get(i));
+            }
+        }
+        //one created ahead and never appended to is not left behind
+        assertEquals(2, segments().size());
+        assertEquals(ids(holds), ids(MappedEventJournal.replay(directory, venue)));
+    }
+
+    @Test
+    public void testEachRunAppendsToASegmentOfItsOwn() throws IOException {
+        SeatHold held = hold(0, 0, 0);
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, newEvent())) {
+            journal.held(held);
+        }
+        //a second run appends to a segment of its own, the first run's records are all still read back
+        SeatHold secondRun = hold(0, 1, 1);
+        try (MappedEventJournal journal = MappedEventJournal.open(directory, newEvent())) {
+            journal.held(secondRun);
+        }
+        assertEquals(2, segments().size());
+        assertEquals(Arrays.asList(held.getSeatHoldId(), secondRun.getSeatHoldId()),
+                ids(MappedEventJournal.replay(directory, venue)));
+    }
+
+    @Test
+    public void testDirectoryWithoutAJournal() throws IOException {
+        assertTrue(MappedEventJournal.replay(directory, venue).isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package com.rcg.walmart.seathold;
+
+import org.junit.Test;
+
+import java.time.*;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SeatHoldExpiryQueueTest {
+    private static final String EMAIL = "someone@domain.com";
+
+    @Test
+    public void testOnlyExpiredHoldsArePolled() {
+        Clock clock = mock(Clock.class);
+        Instant fauxNow = Instant.now();
+        doReturn(fauxNow).when(clock).instant();
+        doReturn(ZoneOffset.UTC).when(clock).getZone();
+        ZonedDateTime now = ZonedDateTime.now(clock);
+
+        SeatHoldExpiryQueue unit = new SeatHoldExpiryQueue();
+        SeatHold longHold = new SeatHold(Collections.emptyList(), EMAIL, now, 10);
+        SeatHold staleHold = new SeatHold(Collections.emptyList(), EMAIL, now.minusMinutes(20), 10);
+        SeatHold justExpiredHold = new SeatHold(Collections.emptyList(), EMAIL, now.minusMinutes(10), 10);
+        unit.add(longHold);
+        unit.add(staleHold);
+        unit.add(justExpiredHold);
+
+        List<SeatHold> expired = unit.pollExpired(clock);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains(staleHold));
+        assertTrue(expired.contains(justExpiredHold));
+        assertEquals(1, unit.size());
+        assertFalse("expired holds cannot be confirmed", staleHold.confirmReservation(clock).isPresent());
+    }
+
+    @Test
+    public void testConfirmedHoldsAreDropped() {
+        Clock clock = mock(Clock.class);
+        Instant fauxNow = Instant.now();
+        Instant hourAgo = fauxNow.minus(Duration.ofHours(1));
+        doReturn(hourAgo).doReturn(hourAgo).doReturn(fauxNow).when(clock).instant();
+        doReturn(ZoneOffset.UTC).when(clock).getZone();
+
+        SeatHoldExpiryQueue unit = new SeatHoldExpiryQueue();
+        SeatHold confirmed = new SeatHold(Collections.emptyList(), EMAIL, ZonedDateTime.now(clock), 10);
+        unit.add(confirmed);
+        assertTrue(confirmed.confirmReservation(clock).isPresent());
+
+        assertTrue(unit.pollExpired(clock).isEmpty());
+        assertEquals(0, unit.size());
+    }
+
+    @Test
+    public void testEmptyQueueDoesNotReadTheClock() {
+        Clock clock = mock(Clock.class);
+        assertTrue(new SeatHoldExpiryQueue().pollExpired(clock).isEmpty());
+        verifyZeroInteractions(clock);
+    }
+}
@@ -0,0 +1,73 @@
+package com.rcg.walmart.seathold;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.*;
+
+public class SeatHoldRegistryTest {
+    private static final String EMAIL = "someone@domain.com";
+    private static final String EMAIL2 = "someoneelse@domain.com";
+
+    private SeatHoldRegistry unit;
+    private SeatHold hold1;
+    private SeatHold hold2;
+    private SeatHold hold3;
+
+    @Before
+    public void setup() {
+        unit = new SeatHoldRegistry();
+        hold1 = new SeatHold(Collections.emptyList(), EMAIL, ZonedDateTime.now(), 10);
+        hold2 = new SeatHold(Collections.emptyList(), EMAIL, ZonedDateTime.now(), 10);
+        hold3 = new SeatHold(Collections.emptyList(), EMAIL2, ZonedDateTime.now(), 10);
+        unit.register(hold1);
+        unit.register(hold2);
+        unit.register(hold3);
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(hold2, unit.find(hold2.getSeatHoldId(), EMAIL).get());
+        assertFalse("wrong email", unit.find(hold2.getSeatHoldId(), EMAIL2).isPresent());
+        assertFalse("unknown id", unit.find(-1, EMAIL).isPresent());
+    }
+
+    @Test
+    public void testForEmail() {
+        assertEquals(2, unit.forEmail(EMAIL).size());
+        assertTrue(unit.forEmail(EMAIL2).contains(hold3));
+        assertTrue(unit.forEmail("nobody@domain.com").isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(unit.remove(hold3));
+        assertFalse(unit.remove(hold3));
+        assertEquals(2, unit.size());
+        assertFalse(unit.find(hold3.getSeatHoldId(), EMAIL2).isPresent());
+        assertTrue(unit.forEmail(EMAIL2).isEmpty());
+    }
+
+    @Test
+    public void testAfterInIdOrder() {
+        List<SeatHold> all = new ArrayList<SeatHold>();
+        unit.after(0, null).forEach(all::add);
+        assertEquals(Arrays.asList(hold1, hold2, hold3), all);
+
+        List<SeatHold> rest = new ArrayList<SeatHold>();
+        unit.after(hold1.getSeatHoldId(), null).forEach(rest::add);
+        assertEquals(Arrays.asList(hold2, hold3), rest);
+
+        List<SeatHold> customer = new ArrayList<SeatHold>();
+        unit.after(0, EMAIL).forEach(customer::add);
+        assertEquals(Arrays.asList(hold1, hold2), customer);
+        assertFalse(unit.after(hold2.getSeatHoldId(), EMAIL).iterator().hasNext());
+    }
+}
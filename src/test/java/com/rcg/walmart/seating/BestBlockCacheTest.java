@@ -0,0 +1,92 @@
+package com.rcg.walmart.seating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BestBlockCacheTest {
+
+    //the greedy walk over the index, the cheapest window among every fragment large enough, earliest on ties
+    private static Optional<SeatingFragment> walked(FreeFragmentIndex index, int numSeats) {
+        SeatingFragment best = null;
+        for (SeatingFragment fragment : index.atLeast(numSeats)) {
+            SeatingFragment window = fragment.bestBlockFromFragment(numSeats).get();
+            if (best == null || window.getTotalSeatCost() < best.getTotalSeatCost()) {
+                best = window;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private static FreeFragmentIndex venue(Random random, int rows, int seatsPerRow) {
+        List<SeatingFragment> fragments = new ArrayList<SeatingFragment>();
+        for (int blockIndex = 0; blockIndex < rows; blockIndex++) {
+            double[] costs = new double[seatsPerRow];
+            for (int i = 0; i < costs.length; i++) {
+                //few distinct costs, so there are plenty of ties
+                costs[i] = random.nextInt(4);
+            }
+            fragments.add(new SeatingRow(blockIndex, 0, costs).asFragment());
+        }
+        return new FreeFragmentIndex(fragments);
+    }
+
+    @Test
+    public void testMatchesTheWalkAsSeatsComeAndGo() {
+        Random random = new Random(3);
+        FreeFragmentIndex index = venue(random, 20, 12);
+        BestBlockCache unit = index.bestBlocks();
+        List<SeatingFragment> taken = new ArrayList<SeatingFragment>();
+        for (int step = 0; step < 500; step++) {
+            if (!taken.isEmpty() && random.nextInt(3) == 0) {
+                index.release(taken.remove(random.nextInt(taken.size())));
+            } else {
+                Optional<SeatingFragment> block = unit.cheapestBlock(1 + random.nextInt(3));
+                if (block.isPresent()) {
+                    taken.add(index.carve(block.get()).get());
+                }
+            }
+            for (int numSeats = 1; numSeats <= BestBlockCache.MAX_GROUP_SIZE; numSeats++) {
+                assertEquals(String.valueOf(walked(index, numSeats)), String.valueOf(unit.cheapestBlock(numSeats)));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyChangedRowsArePricedAgain() {
+        FreeFragmentIndex index = venue(new Random(5), 10, 10);
+        BestBlockCache unit = index.bestBlocks();
+        SeatingFragment pair = unit.cheapestBlock(2).get();
+        BestBlockCache.Stats first = unit.getStats();
+        assertEquals(1, first.getLookups());
+        assertEquals(0, first.getHits());
+        assertEquals(10, first.getRowsRepriced());
+
+        assertEquals(pair, unit.cheapestBlock(2).get());
+        assertEquals(1, unit.getStats().getHits());
+
+        index.carve(pair);
+        BestBlockCache.Stats afterHold = unit.getStats();
+        assertEquals(first.getInvalidations() + 1, afterHold.getInvalidations());
+        assertNotEquals(pair, unit.cheapestBlock(2).get());
+        assertEquals(11, unit.getStats().getRowsRepriced());
+        assertEquals(1.0 / 3, unit.getStats().getHitRate(), 0.00001);
+    }
+
+    @Test
+    public void testNoFragmentLargeEnough() {
+        FreeFragmentIndex index = venue(new Random(7), 3, 5);
+        assertFalse(index.bestBlocks().cheapestBlock(6).isPresent());
+        assertTrue(index.bestBlocks().cheapestBlock(5).isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGroupTooLargeToCache() {
+        new FreeFragmentIndex().bestBlocks().cheapestBlock(BestBlockCache.MAX_GROUP_SIZE + 1);
+    }
+}
@@ -0,0 +1,104 @@
+package com.rcg.walmart.seating;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static junit.framework.TestCase.*;
+
+public class FreeFragmentIndexTest {
+    private FreeFragmentIndex unit;
+    private SeatingFragment pricierPair;
+    private SeatingFragment cheaperPair;
+    private SeatingFragment triple;
+    private SeatingFragment single;
+
+    @Before
+    public void setup() {
+        SeatingRow row1 = new SeatingRow(1, 0, new double[]{3.0, 3.0, 9.0, 1.0, 1.0, 9.0, 0.0});
+        SeatingRow row2 = new SeatingRow(2, 0, new double[]{5.0, 5.0, 5.0});
+        pricierPair = row1.asFragment().subFragment(0, 1);
+        cheaperPair = row1.asFragment().subFragment(3, 4);
+        single = row1.asFragment().subFragment(6, 6);
+        triple = row2.asFragment();
+        unit = new FreeFragmentIndex(Arrays.asList(pricierPair, single, triple, cheaperPair));
+    }
+
+    @Test
+    public void testLargestFirstThenCheapest() {
+        List<SeatingFragment> ordered = new ArrayList<SeatingFragment>(unit.largestFirst());
+        assertEquals(Arrays.asList(triple, cheaperPair, pricierPair, single), ordered);
+        assertEquals(triple, unit.largest().get());
+    }
+
+    @Test
+    public void testSmallestAtLeast() {
+        assertEquals(single, unit.smallestAtLeast(1).get());
+        assertEquals(cheaperPair, unit.smallestAtLeast(2).get());
+        assertEquals(triple, unit.smallestAtLeast(3).get());
+        assertFalse(unit.smallestAtLeast(4).isPresent());
+    }
+
+    @Test
+    public void testAtLeast() {
+        assertEquals(Arrays.asList(triple, cheaperPair, pricierPair), new ArrayList<SeatingFragment>(unit.atLeast(2)));
+        assertTrue(unit.atLeast(4).isEmpty());
+        assertEquals(4, unit.atLeast(1).size());
+    }
+
+    @Test
+    public void testCarveAndRelease() {
+        SeatingFragment requested = new SeatingFragment(Arrays.asList(new Seat(2, 1, 5.0)));
+        Optional<SeatingFragment> carved = unit.carve(requested);
+        assertTrue(carved.isPresent());
+        assertEquals(1, carved.get().getStartIndex());
+        assertEquals(1, carved.get().getEndIndex());
+        assertFalse("seat is no longer free", unit.carve(requested).isPresent());
+
+        List<SeatingFragment> rowOrder = unit.inRowOrder();
+        assertEquals(5, rowOrder.size());
+        assertEquals(Arrays.asList(pricierPair, cheaperPair, single), rowOrder.subList(0, 3));
+        assertEquals(0, rowOrder.get(3).getEndIndex());
+        assertEquals(2, rowOrder.get(4).getStartIndex());
+
+        SeatingFragment coalesced = unit.release(carved.get());
+        assertEquals(0, coalesced.getStartIndex());
+        assertEquals(2, coalesced.getEndIndex());
+        assertEquals(4, unit.size());
+        assertEquals(coalesced, unit.largest().get());
+    }
+
+    @Test
+    public void testIsFree() {
+        assertTrue(unit.isFree(Seat.seatId(1, 4)));
+        assertFalse(unit.isFree(Seat.seatId(1, 5)));
+        assertFalse(unit.isFree(Seat.seatId(7, 0)));
+    }
+
+    @Test
+    public void testRowsBuiltFromSeatListsWiden() {
+        FreeFragmentIndex index = new FreeFragmentIndex();
+        index.add(new SeatingFragment(Arrays.asList(new Seat(1, 5, 1.0))));
+        index.add(new SeatingFragment(Arrays.asList(new Seat(1, 1, 1.0), new Seat(1, 2, 1.0))));
+        index.add(new SeatingFragment(Arrays.asList(new Seat(1, 9, 1.0))));
+        assertEquals(Arrays.asList(1, 5, 9), Arrays.asList(index.inRowOrder().get(0).getStartIndex(),
+                index.inRowOrder().get(1).getStartIndex(), index.inRowOrder().get(2).getStartIndex()));
+        SeatingFragment coalesced = index.release(new SeatingFragment(Arrays.asList(new Seat(1, 3, 1.0), new Seat(1, 4, 1.0))));
+        assertEquals(1, coalesced.getStartIndex());
+        assertEquals(5, coalesced.getEndIndex());
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(unit.remove(triple));
+        assertFalse(unit.remove(triple));
+        assertEquals(3, unit.size());
+        Optional<SeatingFragment> largest = unit.largest();
+        assertTrue(largest.isPresent());
+        assertEquals(cheaperPair, largest.get());
+    }
+}
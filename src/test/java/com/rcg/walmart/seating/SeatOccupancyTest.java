@@ -0,0 +1,84 @@
+package com.rcg.walmart.seating;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.TestCase.*;
+
+public class SeatOccupancyTest {
+    private SeatingRow row;
+    private SeatOccupancy unit;
+
+    @Before
+    public void setup() {
+        //long enough to span three words of the bitset, seats 10..59 start out taken
+        row = new SeatingRow(3, 0, new double[150]);
+        unit = new SeatOccupancy(Arrays.asList(row.asFragment().subFragment(0, 9), row.asFragment().subFragment(60, 149)),
+                Collections.singletonList(row.asFragment()));
+    }
+
+    @Test
+    public void testInitialOccupancy() {
+        assertFalse(unit.isTaken(Seat.seatId(3, 9)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 10)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 59)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 60)));
+        //seats outside of the tracked rows are never free
+        assertTrue(unit.isTaken(Seat.seatId(2, 0)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 150)));
+    }
+
+    @Test
+    public void testClaimConflicts() {
+        assertTrue(unit.claim(row.asFragment().subFragment(60, 140)));
+        assertFalse(unit.claim(row.asFragment().subFragment(140, 145)));
+        assertTrue(unit.claim(row.asFragment().subFragment(141, 145)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 100)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 146)));
+    }
+
+    @Test
+    public void testFailedClaimRollsBackAcrossWords() {
+        assertTrue(unit.claim(row.asFragment().subFragment(140, 140)));
+        //spans all three words and only conflicts in the last one
+        assertFalse(unit.claim(row.asFragment().subFragment(60, 145)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 60)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 127)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 139)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 140)));
+    }
+
+    @Test
+    public void testClaimAllIsAllOrNothing() {
+        SeatingFragment free = row.asFragment().subFragment(0, 4);
+        SeatingFragment taken = row.asFragment().subFragment(8, 12);
+        assertFalse(unit.claimAll(Arrays.asList(free, taken)));
+        assertFalse(unit.isTaken(Seat.seatId(3, 0)));
+
+        assertTrue(unit.claimAll(Arrays.asList(free, row.asFragment().subFragment(60, 61))));
+        unit.release(free);
+        assertFalse(unit.isTaken(Seat.seatId(3, 4)));
+        assertTrue(unit.isTaken(Seat.seatId(3, 61)));
+    }
+
+    @Test
+    public void testRowsAreAllocatedOnFirstClaim() {
+        SeatingRow first = new SeatingRow(0, 0, new double[100]);
+        SeatingRow second = new SeatingRow(1, 0, new double[100]);
+        SeatOccupancy empty = new SeatOccupancy(Arrays.asList(first.asFragment(), second.asFragment()),
+                Arrays.asList(first.asFragment(), second.asFragment()));
+        assertEquals(0, empty.allocatedRows());
+        assertFalse(empty.isTaken(Seat.seatId(1, 99)));
+        empty.release(second.asFragment().subFragment(3, 4));
+        assertEquals(0, empty.allocatedRows());
+
+        assertTrue(empty.claim(second.asFragment().subFragment(3, 4)));
+        assertEquals(1, empty.allocatedRows());
+        assertTrue(empty.isTaken(Seat.seatId(1, 4)));
+        assertFalse(empty.claim(second.asFragment().subFragment(0, 3)));
+        assertFalse(empty.isTaken(Seat.seatId(0, 4)));
+    }
+}
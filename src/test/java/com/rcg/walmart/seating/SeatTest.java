@@ -9,8 +9,19 @@ public class SeatTest {
     @Test
     public void basicBeanTest() {
         Seat unit = new Seat(1,2,3.0);
-        assertEquals(1, (int)unit.getBlockNumber());
-        assertEquals(2, (int) unit.getSeatNumber());
+        assertEquals(1, unit.getBlockNumber());
+        assertEquals(2, unit.getSeatNumber());
         assertEquals(3.0, unit.getSeatValue(), EPSILON);
     }
+
+    @Test
+    public void packedSeatIdTest() {
+        long seatId = Seat.seatId(1234, 56789);
+        assertEquals(1234, Seat.blockNumberOf(seatId));
+        assertEquals(56789, Seat.seatNumberOf(seatId));
+        assertEquals(seatId, new Seat(1234, 56789, 0.0).getSeatId());
+        //negative coordinates survive packing
+        assertEquals(-1, Seat.seatNumberOf(Seat.seatId(0, -1)));
+        assertEquals(-1, Seat.blockNumberOf(Seat.seatId(-1, 0)));
+    }
 }
@@ -186,6 +186,31 @@ public class SeatingFragmentTest {
         assertEquals(3, unit1.getTotalSeatCost(), EPSILON);
     }
 
+    @Test
+    public void splitAndMergeShareRow() {
+        SeatingFragment wholeRow = new SeatingRow(1, 1, new double[]{2.0, 0.0, 1.0, 1.0, 0.0}).asFragment();
+        SeatingFragment middle = wholeRow.subFragment(2, 3);
+        Optional<List<SeatingFragment>> remainder = wholeRow.minusAnother(middle);
+        assertTrue(remainder.isPresent());
+        assertEquals(2, remainder.get().size());
+
+        SeatingFragment rejoined = remainder.get().get(0).mergeWithBlock(middle).mergeWithBlock(remainder.get().get(1));
+        assertEquals(wholeRow.getStartIndex(), rejoined.getStartIndex());
+        assertEquals(wholeRow.getEndIndex(), rejoined.getEndIndex());
+        assertEquals(wholeRow.getTotalSeatCost(), rejoined.getTotalSeatCost(), EPSILON);
+        assertEquals(wholeRow.getSeats(), rejoined.getSeats());
+    }
+
+    @Test
+    public void subFragmentOutsideRange() {
+        try {
+            unit1_1.subFragment(1, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //error thrown is desired behavior
+        }
+    }
+
     @Test
     public void mergeFailsIfNotContiguous() {
         try {
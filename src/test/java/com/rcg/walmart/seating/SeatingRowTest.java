@@ -0,0 +1,63 @@
+package com.rcg.walmart.seating;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.TestCase.*;
+
+public class SeatingRowTest {
+    static final double EPSILON = 0.00001;
+
+    private SeatingRow unit;
+
+    @Before
+    public void setup() {
+        unit = new SeatingRow(3, 1, new double[]{2.0, 0.0, 1.0, 1.0});
+    }
+
+    @Test
+    public void testSeatNumbering() {
+        assertEquals(3, unit.getBlockIndex());
+        assertEquals(1, unit.getFirstSeatNumber());
+        assertEquals(4, unit.getLastSeatNumber());
+        assertEquals(4, unit.getLength());
+        assertTrue(unit.containsSeat(4));
+        assertFalse(unit.containsSeat(0));
+    }
+
+    @Test
+    public void testSeatCosts() {
+        assertEquals(0.0, unit.getSeatCost(2), EPSILON);
+        assertEquals(2.0, unit.rangeCost(2, 4), EPSILON);
+    }
+
+    @Test
+    public void testBestWindowStart() {
+        assertEquals(2, unit.bestWindowStart(1, 4, 1));
+        //windows of two cost 2.0, 1.0, 2.0
+        assertEquals(2, unit.bestWindowStart(1, 4, 2));
+        //ties go to the window furthest along the row
+        assertEquals(4, unit.bestWindowStart(3, 4, 1));
+        assertEquals(1, unit.bestWindowStart(1, 4, 4));
+        assertEquals(-1, unit.bestWindowStart(2, 4, 4));
+    }
+
+    @Test
+    public void testAsFragment() {
+        SeatingFragment fragment = unit.asFragment();
+        assertEquals(3, fragment.getBlockIndex());
+        assertEquals(1, fragment.getStartIndex());
+        assertEquals(4, fragment.getEndIndex());
+        assertEquals(4.0, fragment.getTotalSeatCost(), EPSILON);
+    }
+
+    @Test
+    public void testEmptyRow() {
+        try {
+            new SeatingRow(1, 0, new double[0]);
+            fail("exception thrown");
+        } catch (IllegalArgumentException e) {
+            //test passed
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BranchAndBoundSeatAllocationTest {
+    private static final double EPSILON = 0.00001;
+    private final SeatAllocationStrategy unit = new BranchAndBoundSeatAllocation(Duration.ofSeconds(5));
+
+    private static SeatingFragment row(int blockIndex, double... costs) {
+        return new SeatingRow(blockIndex, 0, costs).asFragment();
+    }
+
+    private static double cost(List<SeatingFragment> blocks) {
+        return blocks.stream().mapToDouble(SeatingFragment::getTotalSeatCost).sum();
+    }
+
+    private static int seats(List<SeatingFragment> blocks) {
+        return blocks.stream().mapToInt(SeatingFragment::getSize).sum();
+    }
+
+    @Test
+    public void testSplitsBetterThanGreedy() {
+        FreeFragmentIndex index = new FreeFragmentIndex(Arrays.asList(
+                row(0, 0, 0, 0, 10, 10, 10),
+                row(1, 0, 0, 0, 10, 10)));
+        //greedy takes all of the first row and a seat of the second
+        List<SeatingFragment> greedy = new GreedySeatAllocation().allocate(index, 7).get();
+        assertEquals(30.0, cost(greedy), EPSILON);
+
+        List<SeatingFragment> best = unit.allocate(index, 7).get();
+        assertEquals(2, best.size());
+        assertEquals(7, seats(best));
+        assertEquals(10.0, cost(best), EPSILON);
+    }
+
+    @Test
+    public void testNoBudgetIsGreedy() {
+        FreeFragmentIndex index = new FreeFragmentIndex(Arrays.asList(
+                row(0, 0, 0, 0, 10, 10, 10),
+                row(1, 0, 0, 0, 10, 10)));
+        List<SeatingFragment> blocks = new BranchAndBoundSeatAllocation(Duration.ZERO).allocate(index, 7).get();
+        assertEquals(30.0, cost(blocks), EPSILON);
+    }
+
+    @Test
+    public void testOneBlockAndNoRoom() {
+        FreeFragmentIndex index = new FreeFragmentIndex(Arrays.asList(row(0, 5, 1, 1, 5), row(1, 0, 9, 9)));
+        List<SeatingFragment> blocks = unit.allocate(index, 2).get();
+        assertEquals(1, blocks.size());
+        assertEquals(2.0, cost(blocks), EPSILON);
+        assertFalse(unit.allocate(index, 8).isPresent());
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            List<SeatingFragment> rows = new ArrayList<SeatingFragment>();
+            int totalSeats = 0;
+            for (int blockIndex = 0; blockIndex < 2 + random.nextInt(4); blockIndex++) {
+                double[] costs = new double[1 + random.nextInt(6)];
+                for (int i = 0; i < costs.length; i++) {
+                    costs[i] = random.nextInt(20);
+                }
+                rows.add(row(blockIndex, costs));
+                totalSeats += costs.length;
+            }
+            FreeFragmentIndex index = new FreeFragmentIndex(rows);
+            int numSeats = 1 + random.nextInt(totalSeats);
+            List<SeatingFragment> greedy = new GreedySeatAllocation().allocate(index, numSeats).get();
+            List<SeatingFragment> best = unit.allocate(index, numSeats).get();
+            assertEquals(numSeats, seats(best));
+            assertEquals(greedy.size(), best.size());
+            assertEquals(exhaustive(rows, 0, greedy.size(), numSeats), cost(best), EPSILON);
+        }
+    }
+
+    //the cheapest way to seat the group in exactly the given number of blocks, each from a different fragment
+    private static double exhaustive(List<SeatingFragment> fragments, int from, int blocks, int numSeats) {
+        if (blocks == 0) {
+            return numSeats == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = from; i < fragments.size(); i++) {
+            for (int size = 1; size <= Math.min(numSeats, fragments.get(i).getSize()); size++) {
+                double cost = fragments.get(i).bestBlockFromFragment(size).get().getTotalSeatCost()
+                        + exhaustive(fragments, i + 1, blocks - 1, numSeats - size);
+                best = Math.min(best, cost);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,69 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class GreedySeatAllocationTest {
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final SeatAllocationStrategy sequential = new GreedySeatAllocation();
+    //threshold 0 prices every search on the pool
+    private final SeatAllocationStrategy parallel = new GreedySeatAllocation(pool, 0);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static SeatingFragment row(int blockIndex, double... costs) {
+        return new SeatingRow(blockIndex, 0, costs).asFragment();
+    }
+
+    @Test
+    public void testLargestBlocksThenCheapestWindow() {
+        FreeFragmentIndex index = new FreeFragmentIndex(Arrays.asList(
+                row(0, 9, 9, 9, 9),
+                row(1, 5, 1, 1, 5),
+                row(2, 0, 0, 0, 0, 0, 0)));
+        List<SeatingFragment> blocks = sequential.allocate(index, 8).get();
+        assertEquals(2, blocks.size());
+        assertEquals(2, blocks.get(0).getBlockIndex());
+        //two seats are cheapest in the middle of the second row
+        assertEquals(1, blocks.get(1).getBlockIndex());
+        assertEquals(2.0, blocks.get(1).getTotalSeatCost(), 0.00001);
+        assertEquals(blocks.toString(), parallel.allocate(index, 8).get().toString());
+        assertFalse(parallel.allocate(index, 15).isPresent());
+    }
+
+    @Test
+    public void testParallelSearchMatchesSequential() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20; trial++) {
+            //enough rows for the parallel search to split into several tasks
+            List<SeatingFragment> rows = new ArrayList<SeatingFragment>();
+            for (int blockIndex = 0; blockIndex < 1500; blockIndex++) {
+                double[] costs = new double[10 + random.nextInt(20)];
+                for (int i = 0; i < costs.length; i++) {
+                    //few distinct costs, so there are plenty of ties to break the same way
+                    costs[i] = random.nextInt(5);
+                }
+                rows.add(row(blockIndex, costs));
+            }
+            FreeFragmentIndex index = new FreeFragmentIndex(rows);
+            for (int numSeats : new int[]{1, 4, 12, 35, 100}) {
+                assertEquals(sequential.allocate(index, numSeats).get().toString(),
+                        parallel.allocate(index, numSeats).get().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.rcg.walmart.ticket;
+
+import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.locking.SimpleLockService;
+import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seating.Seat;
+import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.venue.SquareVenue;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HoldRequestBatcherTest {
+    private static final String EMAIL = "name@domain.com";
+    private static final String EVENT_ID = "VENUE_1_DATE_20180231";
+
+    private static EventService newEvent() {
+        return newEvent(new SquareVenue(20, 20, 0, 10));
+    }
+
+    private static EventService newEvent(SquareVenue venue) {
+        return new EventService(EVENT_ID, venue.getSeatingFragments(), new ArrayList<SeatHold>());
+    }
+
+    //the burst through a batcher and the same requests one search at a time must end in the very same seats
+    private static void assertSameSeatsAsSeparateSearches(SquareVenue venue, int[] groupSizes) throws Exception {
+        TicketService oneAtATime = new TicketService(newEvent(venue), new SimpleLockService());
+        List<String> expectedSeats = new ArrayList<String>();
+        for (int numSeats : groupSizes) {
+            expectedSeats.add(oneAtATime.findAndHoldSeats(numSeats, EMAIL).getSeatingFragments().toString());
+        }
+
+        HoldRequestBatcher unit = new HoldRequestBatcher(newEvent(venue), 2, Duration.ofMillis(200), 64, (n, email) -> null);
+        try {
+            List<CompletableFuture<SeatHold>> burst = new ArrayList<CompletableFuture<SeatHold>>();
+            for (int numSeats : groupSizes) {
+                burst.add(unit.submit(numSeats, EMAIL));
+            }
+            List<String> batchedSeats = new ArrayList<String>();
+            for (CompletableFuture<SeatHold> hold : burst) {
+                batchedSeats.add(hold.get(5, TimeUnit.SECONDS).getSeatingFragments().toString());
+            }
+            assertEquals(expectedSeats, batchedSeats);
+        } finally {
+            unit.close();
+        }
+    }
+
+    @Test
+    public void testBurstGetsTheSeatsSeparateSearchesWould() throws Exception {
+        assertSameSeatsAsSeparateSearches(new SquareVenue(20, 20, 0, 10),
+                new int[]{3, 3, 3, 2, 3, 3, 3, 3, 5, 3, 5, 2, 2, 2, 9, 1, 3});
+    }
+
+    @Test
+    public void testEquallyPricedWindowsGoWhereSeparateSearchesPutThem() throws Exception {
+        //every seat of a row costs the same, so nearly every window ties with others of its row and of the next rows
+        SquareVenue flat = new SquareVenue(6, 12, (row, seatIndex) -> row / 2);
+        assertSameSeatsAsSeparateSearches(flat, new int[]{4, 2, 4, 3, 2, 2, 4, 6, 1, 3, 3, 2, 5, 4, 2});
+    }
+
+    @Test
+    public void testBatchedHoldsNeverShareSeats() throws Exception {
+        EventService event = newEvent();
+        TicketService ticketService = new TicketService(event, new SimpleLockService(), false, 20);
+        try {
+            List<CompletableFuture<SeatHold>> burst = new ArrayList<CompletableFuture<SeatHold>>();
+            for (int i = 0; i < 60; i++) {
+                //the last few requests are larger than any row and fall back to the regular search
+                burst.add(ticketService.findAndHoldSeatsAsync(i < 55 ? 1 + i % 6 : 25, EMAIL));
+            }
+            Set<Long> heldSeats = new HashSet<Long>();
+            for (CompletableFuture<SeatHold> pending : burst) {
+                SeatHold hold = pending.get(5, TimeUnit.SECONDS);
+                assertNotNull(hold);
+                for (SeatingFragment fragment : hold.getSeatingFragments()) {
+                    for (Seat seat : fragment.getSeats()) {
+                        assertTrue("seat held twice: " + seat, heldSeats.add(seat.getSeatId()));
+                    }
+                }
+            }
+            assertEquals(heldSeats.size(), event.totalSeatsHeld());
+            assertEquals(400 - heldSeats.size(), event.totalSeatsAvailable());
+        } finally {
+            ticketService.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmptyRequestDoesNotFailTheBatch() throws Exception {
+        HoldRequestBatcher unit = new HoldRequestBatcher(newEvent(), 2, Duration.ofMillis(200), 64, (n, email) -> null);
+        try {
+            CompletableFuture<SeatHold> before = unit.submit(2, EMAIL);
+            CompletableFuture<SeatHold> empty = unit.submit(0, EMAIL);
+            CompletableFuture<SeatHold> after = unit.submit(3, EMAIL);
+            assertNull(empty.get(5, TimeUnit.SECONDS));
+            assertEquals(2, before.get(5, TimeUnit.SECONDS).getSeatingFragments().get(0).getSize());
+            assertEquals(3, after.get(5, TimeUnit.SECONDS).getSeatingFragments().get(0).getSize());
+        } finally {
+            unit.close();
+        }
+    }
+
+    @Test
+    public void testClosedBatcherTurnsRequestsAway() throws Exception {
+        HoldRequestBatcher unit = new HoldRequestBatcher(newEvent(), 2, Duration.ofMillis(5), 64, (n, email) -> null);
+        unit.close();
+        assertNull(unit.submit(2, EMAIL).get(5, TimeUnit.SECONDS));
+    }
+}
@@ -1,23 +1,36 @@
 package com.rcg.walmart.ticket;
 
 
+import com.rcg.walmart.event.EventRegistry;
 import com.rcg.walmart.event.EventService;
+import com.rcg.walmart.locking.Lock;
 import com.rcg.walmart.locking.LockService;
 import com.rcg.walmart.locking.SimpleLockService;
 import com.rcg.walmart.seathold.SeatHold;
+import com.rcg.walmart.seathold.SeatHoldQuery;
+import com.rcg.walmart.seating.FreeFragmentIndex;
+import com.rcg.walmart.seating.Seat;
 import com.rcg.walmart.seating.SeatingFragment;
+import com.rcg.walmart.seating.SeatingRow;
 import com.rcg.walmart.venue.SquareVenue;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
 
 public class TicketServiceTest {
     private static final String EMAIL = "name@domain.com";
@@ -97,6 +110,26 @@ public class TicketServiceTest {
         assertEquals(1, result.get().size());
     }
 
+    @Test
+    public void findBestSeatingFragmentsFromIndex() {
+        SeatingRow row1 = new SeatingRow(1, 0, new double[]{3.0, 3.0, 9.0, 1.0, 1.0, 9.0, 0.0});
+        SeatingRow row2 = new SeatingRow(2, 0, new double[]{5.0, 5.0, 5.0});
+        SeatingFragment pricierPair = row1.asFragment().subFragment(0, 1);
+        SeatingFragment cheaperPair = row1.asFragment().subFragment(3, 4);
+        FreeFragmentIndex index = new FreeFragmentIndex(Arrays.asList(pricierPair, cheaperPair, row2.asFragment()));
+
+        Optional<List<SeatingFragment>> result = TicketService.findBestSeatingFragments(index, 5);
+        assertTrue(result.isPresent());
+        assertEquals(Arrays.asList(row2.asFragment().getSeats(), cheaperPair.getSeats()),
+                Arrays.asList(result.get().get(0).getSeats(), result.get().get(1).getSeats()));
+
+        result = TicketService.findBestSeatingFragments(index, 1);
+        assertTrue(result.isPresent());
+        assertEquals(4, result.get().get(0).getStartIndex());
+
+        assertFalse(TicketService.findBestSeatingFragments(index, 8).isPresent());
+    }
+
     @Test
     public void testRequestMoreThanTotalSeats() {
         SeatHold result = unit.findAndHoldSeats(10001, "");
@@ -114,12 +147,202 @@ public class TicketServiceTest {
 
     @Test
     public void testEventLockAlreadyTaken() {
-        String lockId = event.getEventId();
+        //holds lock the rows they touch rather than the event, another caller holding the event lock does not matter
+        SimpleLockService lockService = new SimpleLockService();
+        assertTrue(lockService.acquireLock(event.getEventId()).isPresent());
+        TicketService localUnit = new TicketService(event, lockService);
+
+        SeatHold someoneElseIsInFlight = localUnit.findAndHoldSeats(1, "");
+        assertNotNull(someoneElseIsInFlight);
+    }
+
+    @Test
+    public void testRowLocksUnavailable() {
         LockService mockLockService = mock(LockService.class);
-        doReturn(Optional.empty()).when(mockLockService).acquireLock(lockId);
+        doReturn(Optional.empty()).when(mockLockService).acquireLocks(anyCollectionOf(String.class), any(Duration.class));
         TicketService localUnit = new TicketService(event, mockLockService);
 
-        SeatHold someoneElseIsInFlight = localUnit.findAndHoldSeats(1, "");
-        assertNull(someoneElseIsInFlight);
+        SeatHold rowsStayBusy = localUnit.findAndHoldSeats(1, "");
+        assertNull(rowsStayBusy);
+        assertEquals(10000, event.totalSeatsAvailable());
+    }
+
+    @Test
+    public void testOnlyTouchedRowStripesAreLocked() {
+        LockService mockLockService = mock(LockService.class);
+        doReturn(Optional.of(Collections.emptyList())).when(mockLockService).acquireLocks(anyCollectionOf(String.class), any(Duration.class));
+        TicketService localUnit = new TicketService(event, mockLockService);
+
+        SeatHold seatHold = localUnit.findAndHoldSeats(4, EMAIL);
+        assertNotNull(seatHold);
+        verify(mockLockService).acquireLocks(eq(Collections.singleton(EVENT_ID + "/rows-0")), any(Duration.class));
+        verify(mockLockService).releaseLocks(Collections.emptyList());
+    }
+
+    @Test
+    public void testAsyncHoldWaitsForBusyRows() throws Exception {
+        SimpleLockService lockService = new SimpleLockService();
+        TicketService localUnit = new TicketService(event, lockService);
+        Lock busyRows = lockService.acquireLock(EVENT_ID + "/rows-0").get();
+
+        CompletableFuture<SeatHold> pending = localUnit.findAndHoldSeatsAsync(4, EMAIL);
+        assertFalse(pending.isDone());
+
+        lockService.releaseLock(busyRows);
+        SeatHold seatHold = pending.get(5, TimeUnit.SECONDS);
+        assertNotNull(seatHold);
+        assertEquals(0, seatHold.getSeatingFragments().get(0).getBlockIndex());
+    }
+
+    @Test
+    public void testConcurrentHoldsNeverShareSeats() throws Exception {
+        EventService localEvent = new EventService();
+        TicketService localUnit = new TicketService(localEvent, new SimpleLockService());
+        int numThreads = 8;
+        int holdsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<SeatHold>>> results = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final String email = "thread" + t + "@example.com";
+            results.add(executor.submit(() -> {
+                start.await();
+                List<SeatHold> holds = new ArrayList<>();
+                for (int i = 0; i < holdsPerThread; i++) {
+                    SeatHold hold = localUnit.findAndHoldSeats(1 + i % 7, email);
+                    if (hold != null) {
+                        holds.add(hold);
+                    }
+                }
+                return holds;
+            }));
+        }
+        start.countDown();
+        Set<Long> heldSeats = new HashSet<>();
+        int seatsHeld = 0;
+        for (Future<List<SeatHold>> result : results) {
+            for (SeatHold hold : result.get()) {
+                for (SeatingFragment fragment : hold.getSeatingFragments()) {
+                    for (Seat seat : fragment.getSeats()) {
+                        assertTrue("seat held twice: " + seat, heldSeats.add(seat.getSeatId()));
+                        seatsHeld++;
+                    }
+                }
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(seatsHeld, localEvent.totalSeatsHeld());
+        assertEquals(10000 - seatsHeld, localEvent.totalSeatsAvailable());
+        assertEquals(10000 - seatsHeld, localEvent.getAvailableSeats().size());
+    }
+
+    @Test
+    public void testSingleWriterMode() {
+        EventService localEvent = new EventService();
+        TicketService localUnit = new TicketService(localEvent, new SimpleLockService(), true);
+        try {
+            SeatHold first = localUnit.findAndHoldSeats(4, EMAIL);
+            SeatHold second = localUnit.findAndHoldSeats(4, EMAIL);
+            assertNotNull(first);
+            assertNotNull(second);
+            assertEquals(9992, localUnit.numSeatsAvailable());
+            assertNotNull(localUnit.reserveSeats(first.getSeatHoldId(), EMAIL));
+            assertEquals(4, localEvent.totalSeatsReserved());
+            assertEquals(2, localUnit.getReservations().size());
+            assertNull(localUnit.findAndHoldSeats(10000, EMAIL));
+        } finally {
+            localUnit.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleWriterReportsFailingHolds() throws Exception {
+        EventService localEvent = spy(new EventService("failing_event", new SquareVenue(10, 10, 0, 5).getSeatingFragments(),
+                new ArrayList<SeatHold>()));
+        doThrow(new IllegalStateException("journal closed")).when(localEvent)
+                .createSeatHold(anyListOf(SeatingFragment.class), anyString(), anyInt());
+        TicketService localUnit = new TicketService(localEvent, new SimpleLockService(), true);
+        try {
+            localUnit.findAndHoldSeatsAsync("failing_event", 4, EMAIL).get(5, TimeUnit.SECONDS);
+            fail("the hold should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            localUnit.shutdown();
+        }
+    }
+
+    @Test
+    public void testRoutesByEventId() {
+        EventRegistry registry = new EventRegistry();
+        registry.register("small", new SquareVenue(10, 10, 0, 5));
+        TicketService localUnit = new TicketService(registry, new SimpleLockService(), false, 0);
+
+        assertEquals(Arrays.asList("main_event", "small"), localUnit.getEvents());
+        SeatHold seatHold = localUnit.findAndHoldSeats("small", 4, EMAIL);
+        assertNotNull(seatHold);
+        assertEquals(96, localUnit.numSeatsAvailable("small"));
+        assertEquals(10000, localUnit.numSeatsAvailable());
+        assertNull(localUnit.getReservation(seatHold.getSeatHoldId(), EMAIL));
+        assertEquals(seatHold, localUnit.getReservation("small", seatHold.getSeatHoldId(), EMAIL));
+        assertNotNull(localUnit.reserveSeats("small", seatHold.getSeatHoldId(), EMAIL));
+
+        assertNull(localUnit.findAndHoldSeats("unknown", 4, EMAIL));
+        assertEquals(0, localUnit.numSeatsAvailable("unknown"));
+    }
+
+    @Test
+    public void testAllocationStrategyIsPluggable() {
+        //groups larger than a row take two blocks, the search never uses more blocks than the greedy allocation
+        assertNotNull(unit.findAndHoldSeats(100, EMAIL));
+        SeatHold greedy = unit.findAndHoldSeats(120, EMAIL);
+        assertNotNull(greedy);
+        unit.setAllocationStrategy(new BranchAndBoundSeatAllocation(Duration.ofMillis(50)));
+        SeatHold searched = unit.findAndHoldSeats(120, EMAIL);
+        assertNotNull(searched);
+        assertEquals(greedy.getSeatingFragments().size(), searched.getSeatingFragments().size());
+        assertEquals(10000 - 340, unit.numSeatsAvailable());
+    }
+
+    @Test
+    public void testPreviewLeavesTheSeatsFree() {
+        Optional<List<SeatingFragment>> preview = unit.previewSeats(EVENT_ID, 4);
+        assertTrue(preview.isPresent());
+        assertEquals(10000, unit.numSeatsAvailable());
+        SeatHold hold = unit.findAndHoldSeats(4, EMAIL);
+        assertEquals(preview.get().toString(), hold.getSeatingFragments().toString());
+        assertEquals(1, unit.getAvailability(EVENT_ID).getVersion());
+        assertFalse(unit.previewSeats(EVENT_ID, 10001).isPresent());
+        assertFalse(unit.previewSeats("no_such_event", 4).isPresent());
+    }
+
+    @Test
+    public void testHoldsArePagedWithACursor() {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(unit.findAndHoldSeats(2, i % 2 == 0 ? EMAIL : "other@domain.com").getSeatHoldId());
+        }
+        unit.reserveSeats(EVENT_ID, ids.get(4), EMAIL);
+
+        List<Integer> page = new ArrayList<Integer>();
+        OptionalInt next = unit.forEachSeatHold(EVENT_ID, SeatHoldQuery.ALL, 0, 3, hold -> page.add(hold.getSeatHoldId()));
+        assertEquals(ids.subList(0, 3), page);
+        assertEquals(ids.get(2).intValue(), next.getAsInt());
+        page.clear();
+        next = unit.forEachSeatHold(EVENT_ID, SeatHoldQuery.ALL, next.getAsInt(), 3, hold -> page.add(hold.getSeatHoldId()));
+        assertEquals(ids.subList(3, 5), page);
+        assertFalse(next.isPresent());
+
+        page.clear();
+        SeatHoldQuery customerHolds = new SeatHoldQuery(SeatHoldQuery.Status.HELD, EMAIL, null, null);
+        unit.forEachSeatHold(EVENT_ID, customerHolds, 0, 10, hold -> page.add(hold.getSeatHoldId()));
+        assertEquals(Arrays.asList(ids.get(0), ids.get(2)), page);
+
+        page.clear();
+        SeatHoldQuery later = new SeatHoldQuery(null, null, ZonedDateTime.now().plusMinutes(1), null);
+        unit.forEachSeatHold(EVENT_ID, later, 0, 10, hold -> page.add(hold.getSeatHoldId()));
+        assertTrue(page.isEmpty());
+        assertFalse(unit.forEachSeatHold("no_such_event", SeatHoldQuery.ALL, 0, 10, hold -> fail()).isPresent());
     }
 }
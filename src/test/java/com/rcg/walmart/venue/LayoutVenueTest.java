@@ -0,0 +1,87 @@
+package com.rcg.walmart.venue;
+
+import com.rcg.walmart.seating.Seat;
+import com.rcg.walmart.seating.SeatingRow;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class LayoutVenueTest {
+    private static final double EPSILON = 0.00001;
+    private static final String LAYOUT = String.join("\n",
+            "# a small hall with a balcony",
+            "ideal 0 2",
+            "level floor",
+            "section left",
+            "row A 4",
+            "row B 5 first 1   # staggered",
+            "section center",
+            "row A 11",
+            "",
+            "level balcony cost 10",
+            "section front cost 2.5",
+            "row AA 8 first 2");
+
+    private static LayoutVenue read(String layout) throws IOException {
+        return LayoutVenue.read(new BufferedReader(new StringReader(layout)), null);
+    }
+
+    @Test
+    public void testRaggedRowsAcrossLevelsAndSections() throws IOException {
+        LayoutVenue venue = read(LAYOUT);
+        assertEquals(4 + 5 + 11 + 8, venue.numSeatsAvailable());
+        assertEquals(4, venue.getSeatingRows().size());
+        assertEquals(4, venue.getSeatingFragments().size());
+
+        SeatingRow staggered = venue.getSeatingRows().get(1);
+        assertEquals(1, staggered.getBlockIndex());
+        assertEquals(1, staggered.getFirstSeatNumber());
+        assertEquals(5, staggered.getLastSeatNumber());
+
+        assertEquals("floor/left/A", venue.getRowLabel(0));
+        assertEquals("floor/center/A", venue.getRowLabel(2));
+        assertEquals("balcony/front/AA", venue.getRowLabel(3));
+    }
+
+    @Test
+    public void testSeatCosts() throws IOException {
+        LayoutVenue venue = read(LAYOUT);
+        assertEquals(0.0, venue.getSeatCost(Seat.seatId(0, 2)).orElse(-1), EPSILON);
+        assertEquals(2.0, venue.getSeatCost(Seat.seatId(0, 0)).orElse(-1), EPSILON);
+        assertEquals(Math.sqrt(1 + 1), venue.getSeatCost(Seat.seatId(1, 1)).orElse(-1), EPSILON);
+        //the balcony and its section add their extra cost on top of the distance
+        assertEquals(Math.sqrt(9 + 9) + 10 + 2.5, venue.getSeatCost(Seat.seatId(3, 5)).orElse(-1), EPSILON);
+        assertFalse(venue.getSeatCost(Seat.seatId(1, 0)).isPresent());
+        assertFalse(venue.getSeatCost(Seat.seatId(4, 0)).isPresent());
+    }
+
+    @Test
+    public void testGivenCostModel() throws IOException {
+        LayoutVenue venue = LayoutVenue.read(new BufferedReader(new StringReader(LAYOUT)), (row, seatIndex) -> row);
+        assertEquals(2.0, venue.getSeatCost(Seat.seatId(2, 7)).orElse(-1), EPSILON);
+        assertEquals(3 + 12.5, venue.getSeatCost(Seat.seatId(3, 9)).orElse(-1), EPSILON);
+    }
+
+    @Test
+    public void testMalformedLinesAreReported() throws IOException {
+        assertError("row A 4\nrow B many", "line 2: not a whole number: many");
+        assertError("row A 4\nideal 0 0", "line 2: the ideal seat must come before the first row");
+        assertError("seat 4", "line 1: unknown keyword seat");
+        assertError("row A 4 extra", "line 1: unexpected extra");
+        assertError("row A 0", "line 1: a row needs at least one seat");
+        assertError("# nothing here", "layout has no rows");
+    }
+
+    private static void assertError(String layout, String message) throws IOException {
+        try {
+            read(layout);
+            fail("expected " + message);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.rcg.walmart.venue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SeatCostFunctionTest {
+
+    @Test
+    public void testRowCostsMatchSeatCosts() {
+        SeatCostFunction distance = SeatCostFunction.distanceFrom(3, 40);
+        double[] costs = new double[97];
+        distance.rowCosts(11, costs);
+        for (int seatIndex = 0; seatIndex < costs.length; seatIndex++) {
+            assertEquals(distance.seatCost(11, seatIndex), costs[seatIndex], 0.0);
+        }
+        assertEquals(0.0, distance.seatCost(3, 40), 0.0);
+        assertEquals(5.0, distance.seatCost(6, 44), 0.0);
+    }
+
+    @Test
+    public void testDefaultRowCosts() {
+        SeatCostFunction byRow = (row, seatIndex) -> row;
+        double[] costs = new double[3];
+        byRow.rowCosts(7, costs);
+        assertArrayEquals(new double[]{7, 7, 7}, costs, 0.0);
+    }
+
+    @Test
+    public void testEqualDistancesShareAVenue() {
+        assertEquals(SeatCostFunction.distanceFrom(1, 2), SeatCostFunction.distanceFrom(1, 2));
+        assertNotEquals(SeatCostFunction.distanceFrom(1, 2), SeatCostFunction.distanceFrom(2, 1));
+        assertSame(VenueTemplates.square(5, 5, SeatCostFunction.distanceFrom(1, 2)), VenueTemplates.square(5, 5, 1, 2));
+    }
+}
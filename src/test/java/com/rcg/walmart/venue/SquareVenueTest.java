@@ -52,4 +52,12 @@ public class SquareVenueTest {
         assertEquals(10, unit.getSeatingFragments().size());
     }
 
+    @Test
+    public void testPluggableSeatCosts() {
+        //front rows first, then the aisle seats of a row
+        SquareVenue frontFirst = new SquareVenue(10, 10, (row, seatIndex) -> row * 100 + Math.min(seatIndex, 9 - seatIndex));
+        assertEquals(0.0, frontFirst.getSeatValue(0, 0).get(), EPSILON);
+        assertEquals(104.0, frontFirst.getSeatValue(1, 5).get(), EPSILON);
+        assertEquals(4.0 + 4.0 + 3.0, frontFirst.getSeatingRows().get(0).rangeCost(4, 6), EPSILON);
+    }
 }
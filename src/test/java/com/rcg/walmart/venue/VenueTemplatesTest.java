@@ -0,0 +1,32 @@
+package com.rcg.walmart.venue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VenueTemplatesTest {
+
+    @Test
+    public void testSameLayoutIsShared() {
+        SquareVenue venue = VenueTemplates.square(20, 30, 0, 15);
+        assertSame(venue, VenueTemplates.square(20, 30, 0, 15));
+        assertNotSame(venue, VenueTemplates.square(20, 30, 1, 15));
+        assertEquals(600, venue.numSeatsAvailable());
+    }
+
+    @Test
+    public void testOtherCostFunctionsAreNotKept() {
+        SeatCostFunction byRow = (row, seatIndex) -> row;
+        SquareVenue venue = VenueTemplates.square(20, 30, byRow);
+        assertNotSame(venue, VenueTemplates.square(20, 30, byRow));
+        assertEquals(7.0, venue.getSeatValue(7, 3).get(), 0.0);
+    }
+
+    @Test
+    public void testTemplateCostsMatchAFreshVenue() {
+        SquareVenue fresh = new SquareVenue(20, 30, 0, 15);
+        SquareVenue template = VenueTemplates.square(20, 30, 0, 15);
+        assertEquals(fresh.getSeatValue(7, 3), template.getSeatValue(7, 3));
+        assertEquals(Math.sqrt(7 * 7 + 12 * 12), template.getSeatValue(7, 3).get(), 0.0);
+    }
+}